@@ -23,7 +23,9 @@ import org.eclipse.californium.tools.coapbench.LogFile;
 
 
 /**
- * Wrapper to invoke ApacheBench
+ * Wrapper to invoke ApacheBench. Prefer bench with an http URI, which
+ * measures HTTP in process with the same method and log format as CoAP, see
+ * {@link org.eclipse.californium.tools.coapbench.HttpVirtualClient}.
  */
 public class ApacheBench {
 
@@ -95,6 +97,7 @@ public class ApacheBench {
 			e.printStackTrace();
 			log.println("ERROR: "+command);
 		}
+		log.flush();
 	}
 
 	private static int readIntArgument(String line, String separator) {
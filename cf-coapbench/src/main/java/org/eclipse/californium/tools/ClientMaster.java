@@ -16,24 +16,48 @@
  ******************************************************************************/
 package org.eclipse.californium.tools;
 import java.awt.Toolkit;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.elements.exception.ConnectorException;
+import org.eclipse.californium.tools.coapbench.ClockOffset;
 import org.eclipse.californium.tools.coapbench.Command;
+import org.eclipse.californium.tools.coapbench.DeviceThreads;
+import org.eclipse.californium.tools.coapbench.LatencyUnit;
+import org.eclipse.californium.tools.coapbench.RunResult;
+import org.eclipse.californium.tools.coapbench.Scenario;
 
 /**
  * The master keeps a TCP connection to all client slaves. The master sends
  * commands to all slaves. Use @1 to send a command only to client with id 1.
+ * <p>
+ * Each line with bench or observe commands starts a run. The master tags the
+ * commands with the run id, the slaves send their result of the run back and
+ * the master merges them into a cluster-wide report.
+ * <p>
+ * Each slave connection is read by its own thread, which timestamps the
+ * replies. Commands expecting replies are sent to all slaves first and the
+ * replies are gathered afterwards until a common deadline, so the slaves
+ * work in parallel.
  */
 public class ClientMaster implements Runnable {
 
@@ -51,6 +75,12 @@ public class ClientMaster implements Runnable {
 	public static final String CMD_APACHE_BENCH = "ab";
 	public static final String CMD_HELP = "help";
 	public static final String CMD_POST = "post";
+	public static final String CMD_RESULTS = "results";
+	public static final String CMD_SYNC = "sync";
+	
+	public static final int PING_TIMEOUT = 2000; // ms
+	public static final int SCENARIO_SETTLE = 1000; // ms
+	public static final int SCENARIO_GRACE = 30000; // ms to wait for results after a run
 	
 	private ServerSocket masterSocket;
 	
@@ -58,15 +88,16 @@ public class ClientMaster implements Runnable {
 	
 	private String last = "";
 	
+	// runs by id, guarded by itself
+	private final Map<Integer, Run> runs = new HashMap<Integer, Run>();
+	private int lastRun;
+	
 	public ClientMaster(int port) throws Exception {
 		this.masterSocket = new ServerSocket(port);
-		this.slaves = new LinkedList<Slave>();
+		this.slaves = new CopyOnWriteArrayList<Slave>();
 	}
 	
 	public void start() {
-		int successful = 0;
-		int totalobserves = 0;
-		
 		System.out.println("Start client master");
 		System.out.println("Type command, e.g., \"help\":");
 		new Thread(this).start();
@@ -74,56 +105,11 @@ public class ClientMaster implements Runnable {
 		try {
 			while (true) {
 				try {
-					successful = 0;
-					totalobserves = 0;
 					String line = in.nextLine();
 					if (line.equals("-"))
 						line = last;
 					else last = line;
-					String[] commands = line.split(";");
-					for (String cmd:commands) {
-						if (new Command(cmd.trim()).getBody().startsWith(CMD_OBSERVE_BENCH))
-							totalobserves++;
-					}
-					for (String cmd:commands) {
-						Command command = new Command(cmd.trim());
-						String body = command.getBody();
-						if (body.isEmpty()) {
-							continue;
-						} else if (body.startsWith(CMD_EXIT)) {
-							exit(command);
-						} else if (body.startsWith(CMD_STATUS)) {
-							status();
-						} else if (body.startsWith(CMD_PING)) {
-							ping(command);
-						} else if (body.startsWith(CMD_STRESS)) {
-							command(command);
-						} else if (body.startsWith(CMD_BENCH)) {
-							command(command);
-						} else if (body.startsWith(CMD_OBSERVE_BENCH)) {
-							if (observe(command))
-								++successful;
-							else {
-								observe_fail();
-								break;
-							}
-							if (successful == totalobserves)
-								observe_start();
-						} else if (body.startsWith(CMD_APACHE_BENCH)) {
-							command(command);
-						} else if (body.startsWith(CMD_WAIT)) {
-							wait(command);
-						} else if (body.startsWith(CMD_BEEP)) {
-							Toolkit.getDefaultToolkit().beep();
-						} else if (body.startsWith(CMD_POST)) {
-							post(command);
-						} else if (body.startsWith(CMD_HELP)) {
-							printHelp();
-							
-						} else {
-							System.out.println("Unknown command: "+command);
-						}
-					}
+					execute(line);
 					System.out.println();
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -133,6 +119,149 @@ public class ClientMaster implements Runnable {
 		} finally { in.close(); }
 	}
 	
+	/**
+	 * Runs a scenario unattended and writes the results of all stages into a
+	 * JSON document.
+	 * 
+	 * @param scenario the scenario
+	 * @param output name of the result document
+	 * @return {@code true}, if all stages completed with results of all
+	 *         slaves
+	 * @throws Exception if the scenario cannot be run
+	 */
+	public boolean runScenario(Scenario scenario, String output) throws Exception {
+		System.out.println("Run scenario " + scenario.getName());
+		new Thread(this).start();
+		long deadline = System.nanoTime() + scenario.getSlaveTimeout() * 1000000000L;
+		int required = Math.max(1, scenario.getSlaves());
+		while (slaves.size() < required) {
+			if (System.nanoTime() - deadline > 0)
+				throw new IllegalStateException("Only " + slaves.size() + " of " + required + " slaves connected");
+			Thread.sleep(100);
+		}
+		Thread.sleep(SCENARIO_SETTLE); // let further slaves finish connecting
+		
+		boolean complete = true;
+		BufferedWriter out = new BufferedWriter(new FileWriter(output));
+		try {
+			out.write("{\"scenario\":\"" + RunResult.escapeJson(scenario.getName()) + "\",\"started\":" + System.currentTimeMillis()
+					+ ",\"slaves\":" + slaves.size() + ",\"stages\":[");
+			boolean first = true;
+			for (Scenario.Step step : scenario.getSteps()) {
+				System.out.println("\n" + step);
+				if (step.getLine() == null) {
+					Thread.sleep(step.getTime() * 1000L);
+					continue;
+				}
+				Run run = execute(step.getLine());
+				boolean reported = run != null && run.await(System.nanoTime() + (step.getTime() * 1000L + SCENARIO_GRACE) * 1000000L);
+				complete &= reported;
+				out.write(first ? "\n" : ",\n");
+				first = false;
+				out.write("{\"stage\":\"" + RunResult.escapeJson(step.getStage()) + "\",\"command\":\"" + RunResult.escapeJson(step.getLine())
+						+ "\",\"complete\":" + reported);
+				if (run != null)
+					out.write(",\"result\":" + run.formatJson());
+				out.write("}");
+				out.flush();
+			}
+			out.write("\n],\"complete\":" + complete + "}\n");
+		} finally {
+			out.close();
+		}
+		System.out.println("\nScenario " + (complete ? "completed" : "incomplete") + ", results written to " + output);
+		return complete;
+	}
+	
+	/**
+	 * Executes a line of commands separated by ;.
+	 * 
+	 * @param line line of commands
+	 * @return the run started by the line, or null, if the line started no
+	 *         run or the run failed to start
+	 * @throws Exception if a command fails
+	 */
+	private Run execute(String line) throws Exception {
+		int successful = 0;
+		int totalobserves = 0;
+		String[] commands = line.split(";");
+		Run run = null;
+		int delay = 0;
+		Set<Slave> targets = new LinkedHashSet<Slave>();
+		for (String cmd:commands) {
+			Command command = new Command(cmd.trim());
+			if (command.getBody().startsWith(CMD_OBSERVE_BENCH))
+				totalobserves++;
+			if (isRun(command)) {
+				if (run == null)
+					run = newRun(line, command);
+				run.expect(getSlaves(command.getAt()).size());
+				if (command.has("-at")) {
+					delay = Math.max(delay, command.getInt("-at"));
+					targets.addAll(getSlaves(command.getAt()));
+				}
+			}
+		}
+		// with -at, all runs of the line start together at the slaves
+		long start = 0;
+		if (delay > 0) {
+			if (synchronize(targets)) {
+				start = System.nanoTime() + delay * 1000000L;
+			} else {
+				System.out.println("Could not synchronize the clocks of all slaves, the run is not started");
+				removeRun(run);
+				return null;
+			}
+		}
+		for (String cmd:commands) {
+			Command command = new Command(cmd.trim());
+			if (run != null && isRun(command))
+				command = new Command(cmd.trim() + " -run " + run.id);
+			String body = command.getBody();
+			if (body.isEmpty()) {
+				continue;
+			} else if (body.startsWith(CMD_EXIT)) {
+				exit(command);
+			} else if (body.startsWith(CMD_STATUS)) {
+				status();
+			} else if (body.startsWith(CMD_PING)) {
+				ping(command);
+			} else if (body.startsWith(CMD_STRESS)) {
+				command(command, 0);
+			} else if (body.startsWith(CMD_BENCH)) {
+				command(command, isRun(command) && command.has("-at") ? start : 0);
+			} else if (body.startsWith(CMD_OBSERVE_BENCH)) {
+				if (observe(command))
+					++successful;
+				else {
+					observe_fail();
+					removeRun(run);
+					return null;
+				}
+				if (successful == totalobserves)
+					observe_start(delay);
+			} else if (body.startsWith(CMD_APACHE_BENCH)) {
+				command(command, 0);
+			} else if (body.startsWith(CMD_WAIT)) {
+				wait(command);
+			} else if (body.startsWith(CMD_BEEP)) {
+				Toolkit.getDefaultToolkit().beep();
+			} else if (body.startsWith(CMD_POST)) {
+				post(command);
+			} else if (body.startsWith(CMD_SYNC)) {
+				synchronize(getSlaves(command.getAt()));
+			} else if (body.startsWith(CMD_RESULTS)) {
+				results(command);
+			} else if (body.startsWith(CMD_HELP)) {
+				printHelp();
+				
+			} else {
+				System.out.println("Unknown command: "+command);
+			}
+		}
+		return run;
+	}
+	
 	public void status() {
 		System.out.println("Connected to "+slaves.size()+" slaves");
 		for (Slave s:slaves)
@@ -141,50 +270,127 @@ public class ClientMaster implements Runnable {
 	
 	public void ping(Command command) {
 		System.out.println("Ping to slaves");
-		for (Slave s:getSlaves(command.getAt())) {
-			System.out.println(" - "+s+": "+s.ping()+" ms");
+		ArrayList<Slave> targets = getSlaves(command.getAt());
+		int[] rtts = ping(targets);
+		for (int i = 0; i < rtts.length; i++)
+			System.out.println(" - "+targets.get(i)+": "+rtts[i]+" ms");
+	}
+	
+	/*
+	 * Pings all slaves at once and gathers the replies until a common
+	 * deadline. Returns the round trips in ms, -1 for slaves without reply.
+	 */
+	private int[] ping(List<Slave> targets) {
+		for (Slave s:targets)
+			s.request(CMD_PING);
+		long deadline = System.nanoTime() + PING_TIMEOUT * 1000000L;
+		int[] rtts = new int[targets.size()];
+		for (int i = 0; i < rtts.length; i++) {
+			Slave s = targets.get(i);
+			Reply reply = s.await(deadline);
+			rtts[i] = reply == null ? -1 : (int) ((reply.time - s.sentAt) / 1000000);
 		}
+		return rtts;
 	}
 	
-	private void command(Command command) {
+	/*
+	 * Sends the command to the slaves. With a start time, each slave gets the
+	 * start time converted into its own clock.
+	 */
+	private void command(Command command, long start) {
 		for (Slave s:getSlaves(command.getAt())) {
-			System.out.println("Send \""+command.getBody()+"\" to "+s);
-			s.send(command.getBody());
+			String body = command.getBody();
+			if (start != 0)
+				body += " -start-nanos " + s.clock.toRemote(start);
+			System.out.println("Send \""+body+"\" to "+s);
+			s.send(body);
+		}
+	}
+	
+	/*
+	 * Estimates the clock offsets of the slaves. Each round samples all slaves
+	 * at once, the reader threads take the receive times.
+	 */
+	private boolean synchronize(Collection<Slave> targets) {
+		List<Slave> pending = new ArrayList<Slave>(targets);
+		for (Slave s:pending)
+			s.clock.reset();
+		boolean all = true;
+		for (int i = 0; i < ClockOffset.SAMPLES && !pending.isEmpty(); i++) {
+			for (Slave s:pending)
+				s.request(CMD_SYNC);
+			long deadline = System.nanoTime() + PING_TIMEOUT * 1000000L;
+			for (Iterator<Slave> it = pending.iterator(); it.hasNext();) {
+				Slave s = it.next();
+				Reply reply = s.await(deadline);
+				try {
+					if (reply == null || !reply.line.startsWith(CMD_SYNC + " "))
+						throw new NumberFormatException();
+					s.clock.add(s.sentAt, Long.parseLong(reply.line.substring(CMD_SYNC.length() + 1)), reply.time);
+				} catch (NumberFormatException e) {
+					System.out.println(" - " + s + ": no clock offset");
+					all = false;
+					it.remove();
+				}
+			}
 		}
+		for (Slave s:pending)
+			System.out.format(" - %s: offset %d us, round trip %d us%n", s, s.clock.getOffset() / 1000, s.clock.getRoundTrip() / 1000);
+		return all;
 	}
 	
+	/*
+	 * Sends the observe command to all slaves at once and waits until all of
+	 * them have initialized their servers or the common deadline has passed.
+	 */
 	private boolean observe(Command command) {
 		ArrayList<Slave> subslaves = getSlaves(command.getAt());
+		if (command.has("-log")) {
+			for (Slave slave:subslaves) {
+				System.out.println("Observe cmd \"" + command.getBody() + "\" sent to " + slave);
+				slave.send(command.getBody());
+			}
+			return true;
+		}
 		int timeout = 10000;
+		if (command.has("-s"))
+			timeout = ((250 + command.getInt("-s")) * 40 > 1000 ? (250 + command.getInt("-s")) * 40 : 1000);
 		for (Slave slave:subslaves) {
 			System.out.println("Observe cmd \"" + command.getBody() + "\" sent to " + slave);
-
-			if (command.has("-log")) {
-				slave.send(command.getBody());
-				continue;
+			slave.request(command.getBody());
+		}
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		ArrayList<Slave> failed = new ArrayList<Slave>();
+		for (Slave slave:subslaves) {
+			Reply reply = slave.await(deadline);
+			if (reply == null || !reply.line.equals(CMD_OBSERVE_READY)) {
+				System.err.println("Slave #" + slave.id + " did not manage to initialize servers (" + (reply == null ? null : reply.line) + ")");
+				failed.add(slave);
 			}
-			if (command.has("-s"))
-				timeout = ((250 + command.getInt("-s")) * 40 > 1000 ? (250 + command.getInt("-s")) * 40 : 1000);
-			if (!slave.observe_init(command, timeout)) {
-				if (slave.ping() < 0) {
-					System.err.println("Slave #" + slave.id + " is unreachable.");
-					try {
-						slave.socket.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					remove(slave);
+		}
+		if (failed.isEmpty())
+			return true;
+		int[] rtts = ping(failed);
+		for (int i = 0; i < rtts.length; i++) {
+			if (rtts[i] < 0) {
+				Slave slave = failed.get(i);
+				System.err.println("Slave #" + slave.id + " is unreachable.");
+				try {
+					slave.socket.close();
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
-				return false;
+				remove(slave);
 			}
 		}
-		return true;
+		return false;
 	}
 	
-	private void observe_start() {
+	private void observe_start(int delay) {
 		System.out.println("All slaves reported ready for observe benchmarking.");
+		long start = delay > 0 ? System.nanoTime() + delay * 1000000L : 0;
 		for (Slave s:getSlaves(Command.ALL))
-			s.send(CMD_OBSERVE_START);
+			s.send(start != 0 ? CMD_OBSERVE_START + " -start-nanos " + s.clock.toRemote(start) : CMD_OBSERVE_START);
 	}
 	
 	private void observe_fail() {
@@ -193,6 +399,65 @@ public class ClientMaster implements Runnable {
 			s.send(CMD_OBSERVE_FAIL);
 	}
 	
+	/*
+	 * Bench and observe commands with a target start a run on the slaves.
+	 */
+	private boolean isRun(Command command) {
+		String body = command.getBody();
+		return (body.startsWith(CMD_BENCH) || body.startsWith(CMD_OBSERVE_BENCH) && !body.startsWith(CMD_OBSERVE_START))
+				&& !command.has("-log") && !command.has("-new-log") && command.getParameters().size() > 0;
+	}
+	
+	private Run newRun(String line, Command command) {
+		LatencyUnit unit = command.has("-latency-unit") ? LatencyUnit.fromSymbol(command.getString("-latency-unit")) : LatencyUnit.MILLISECONDS;
+		synchronized (runs) {
+			Run run = new Run(++lastRun, line, unit);
+			runs.put(run.id, run);
+			return run;
+		}
+	}
+	
+	private void removeRun(Run run) {
+		if (run != null) {
+			synchronized (runs) {
+				runs.remove(run.id);
+			}
+		}
+	}
+	
+	private void onResult(Slave slave, String line) {
+		RunResult result;
+		try {
+			result = RunResult.decode(line);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Slave #" + slave.id + " sent a malformed result: " + e.getMessage());
+			return;
+		}
+		Run run;
+		synchronized (runs) {
+			run = runs.get(result.getRun());
+		}
+		if (run == null)
+			System.err.println("Slave #" + slave.id + " sent a result of unknown run " + result.getRun());
+		else
+			run.add(result);
+	}
+	
+	/*
+	 * Prints the merged result of the last or the given run, even if not all
+	 * slaves have reported yet.
+	 */
+	private void results(Command command) {
+		Run run;
+		synchronized (runs) {
+			run = runs.get(command.has("-run") ? command.getInt("-run") : lastRun);
+		}
+		if (run == null)
+			System.out.println("No such run");
+		else
+			run.report();
+	}
+	
 	private void post(Command command) throws InterruptedException, ConnectorException, IOException {
 		List<String> parameters = command.getParameters();
 		if (parameters.size() > 0) {
@@ -257,20 +522,50 @@ public class ClientMaster implements Runnable {
 		slaves.remove(slave);
 	}
 	
-	private class Slave {
+	private class Slave implements Runnable {
 		
 		private int id;
 		private Socket socket;
 		private Scanner in;
+		// replies to requests, results are dispatched by the reader
+		private final BlockingQueue<Reply> replies = new LinkedBlockingQueue<Reply>();
+		private final ClockOffset clock = new ClockOffset();
+		// time of the last request
+		private long sentAt;
 		
 		public Slave(Socket socket, int id) throws Exception {
 			this.socket = socket;
 			this.socket.setSoTimeout(0);
+			this.socket.setTcpNoDelay(true);
 			this.in = new Scanner(socket.getInputStream());
 			this.id = id;
+			// one reader per slave, virtual if supported to scale to many slaves
+			Thread reader = DeviceThreads.newThread(this, "Slave-" + id, true);
+			reader.setDaemon(true);
+			reader.start();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (in.hasNextLine()) {
+					String line = in.nextLine();
+					long time = System.nanoTime();
+					if (line.startsWith(RunResult.CMD_RESULT))
+						onResult(this, line);
+					else
+						replies.offer(new Reply(line, time));
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			if (slaves.contains(this)) {
+				System.out.println("Lost connection to slave " + this);
+				remove(this);
+			}
 		}
 		
-		public boolean send(String command) { // TODO: find a way to keep a socket up when it times out
+		public synchronized boolean send(String command) { // TODO: find a way to keep a socket up when it times out
 			try {
 				socket.getOutputStream().write(new String(command + "\n").getBytes());
 				socket.getOutputStream().flush();
@@ -287,38 +582,25 @@ public class ClientMaster implements Runnable {
 			return false;
 		}
 		
-		public int ping() {
-			try {
-				socket.setSoTimeout(2000);
-				long t0 = System.nanoTime();
-				boolean succ = send(CMD_PING);
-				if (!succ) return -1;
-				in.nextLine(); // wait for response
-				long dt = System.nanoTime() - t0;
-				return (int) (dt / 1000000);
-			} catch (NoSuchElementException nsee) {
-				return -1;
-			} catch (Exception e) {
-				e.printStackTrace();
-				return -1;
-			}
+		/*
+		 * Sends a command, which expects a reply. Earlier replies are dropped.
+		 */
+		public boolean request(String command) {
+			replies.clear();
+			sentAt = System.nanoTime();
+			return send(command);
 		}
 		
-		public boolean observe_init(Command cmd, int timeout) {
-			send(cmd.getBody());
-			String response = new String();
+		/*
+		 * Waits for the reply to the last request until the deadline.
+		 */
+		public Reply await(long deadline) {
 			try {
-				socket.setSoTimeout(timeout);
-				response = in.nextLine();
-				if (!response.equals(CMD_OBSERVE_READY))
-					throw new NoSuchElementException();
-				return true;
-			} catch (NoSuchElementException nsee) { // timeout/fail
-				System.err.println("Slave #" + id + " did not manage to initialize servers (" + response + ")");
-			} catch (SocketException e) {
-				e.printStackTrace();
+				return replies.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
 			}
-			return false;
 		}
 		
 		@Override
@@ -327,23 +609,110 @@ public class ClientMaster implements Runnable {
 		}
 	}
 	
+	/*
+	 * A line received from a slave and the time it was received.
+	 */
+	private static class Reply {
+		
+		private final String line;
+		private final long time;
+		
+		public Reply(String line, long time) {
+			this.line = line;
+			this.time = time;
+		}
+	}
+	
+	/*
+	 * A run started by one line of commands. It expects a result from each
+	 * slave the commands were sent to.
+	 */
+	private static class Run {
+		
+		private final int id;
+		private final String line;
+		private final LatencyUnit unit;
+		private final RunResult total;
+		private int expected;
+		private int received;
+		
+		public Run(int id, String line, LatencyUnit unit) {
+			this.id = id;
+			this.line = line;
+			this.unit = unit;
+			this.total = new RunResult(id);
+		}
+		
+		public synchronized void expect(int slaves) {
+			expected += slaves;
+		}
+		
+		public synchronized void add(RunResult result) {
+			total.merge(result);
+			if (++received == expected) {
+				report();
+				notifyAll();
+			}
+		}
+		
+		/*
+		 * Waits until all slaves have reported or the deadline has passed.
+		 */
+		public synchronized boolean await(long deadline) throws InterruptedException {
+			long wait;
+			while (received < expected && (wait = deadline - System.nanoTime()) > 0)
+				TimeUnit.NANOSECONDS.timedWait(this, wait);
+			return received >= expected;
+		}
+		
+		public synchronized String formatJson() {
+			return total.formatJson(unit);
+		}
+		
+		public synchronized void report() {
+			System.out.println("\nRun " + id + ", results of " + received + "/" + expected + " slaves: " + line);
+			System.out.println(total.format(unit));
+		}
+	}
+	
 	public void printHelp() {
 		System.out.println(
 			"Send a signal to all clients each starting 50 clients for 60 seconds with the command"
 			+ "\n    bench -c 50 -t 60 coap://localhost:5683/fibonacci?n=20"
 			+ "\n"
+			+ "\nLet all slaves start 500 ms from now at the same time, after estimating their clock offsets"
+			+ "\n    bench -c 50 -t 60 -at 500 coap://localhost:5683/fibonacci?n=20"
+			+ "\n"
+			+ "\nLet each client keep 16 requests in flight"
+			+ "\n    bench -c 50 -window 16 -t 60 coap://localhost:5683/benchmark"
+			+ "\n"
+			+ "\nSend the weighted request mix of the file mix.txt on each slave"
+			+ "\n    bench -c 50 -mix mix.txt -t 60 coap://localhost:5683/"
+			+ "\n"
 			+ "\nCreate a new log file my_name (no spaces allowed)"
 			+ "\n    bench -new-log my_name"
 			+ "\n"
 			+ "\nInsert a log entry into log file (no spaces allowed)"
 			+ "\n    bench -log Test_No_77"
 			+ "\n"
+			+ "\nStress a cluster of servers with 8 sockets per slave, each from its own source port"
+			+ "\n    stress -start -sockets 8 -port 40000 coap://10.0.0.1/hello coap://10.0.0.2/hello"
+			+ "\n    stress -stop"
+			+ "\n"
 			+ "\nSend a signal to all clients each starting n servers for m seconds for an observe benchmark with the command"
 			+ "\n    observe -s n -t m coap://localhost:5683/announce"
 			+ "\n"
+			+ "\nLet each of n servers serve 1000 observe relations from 2 threads, each relation notified 10 times per second"
+			+ "\n    observe -s n -relations 1000 -senders 2 -relation-rate 10 -t m coap://localhost:5683/announce"
+			+ "\n"
+			+ "\nLet n servers send NON notifications with Poisson inter-arrival times, 100 per second each and 5000 per second in total"
+			+ "\n    observe -s n -non -notify-rate 100 -arrival poisson -max-rate 5000 -t m coap://localhost:5683/announce"
+			+ "\n"
 			+ "\nOther commands: "
 			+ "\n    status       Print the current status"
 			+ "\n    ping         Exchange a message with each slave"
+			+ "\n    sync         Estimate the clock offset of each slave"
+			+ "\n    results [-run id] Print the merged result of the last or the given run"
 			+ "\n    wait -t time Wait for the spe"
 			+ "\n    beep         Give a beep sound"
 			+ "\n    exit [-all]  Exit the master and all slaves"
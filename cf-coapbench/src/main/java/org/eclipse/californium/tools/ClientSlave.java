@@ -29,7 +29,13 @@ import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 import org.eclipse.californium.tools.coapbench.Command;
+import org.eclipse.californium.tools.coapbench.LatencyUnit;
+import org.eclipse.californium.tools.coapbench.MultiObserverVirtualServer;
+import org.eclipse.californium.tools.coapbench.NotificationPacer;
+import org.eclipse.californium.tools.coapbench.ResultSink;
+import org.eclipse.californium.tools.coapbench.RunResult;
 import org.eclipse.californium.tools.coapbench.VirtualDeviceManager;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
 
 
 /**
@@ -47,6 +53,7 @@ public class ClientSlave {
 	public static final String CMD_OBSERVE_READY = "observe_ready";
 	public static final String CMD_OBSERVE_FAIL = "observe_fail";
 	public static final String CMD_APACHE_BENCH = "ab";
+	public static final String CMD_SYNC = "sync";
 	
 	private InetAddress address;
 	private int port;
@@ -55,6 +62,7 @@ public class ClientSlave {
 	
 	private VirtualDeviceManager vdm;
 	private ApacheBench ab;
+	private StressClient stress;
 	
 	public ClientSlave(InetAddress address, int port) throws Exception {
 		this.address = address;
@@ -82,6 +90,7 @@ public class ClientSlave {
 			try {
 				socket = new Socket(
 						address, port);
+				socket.setTcpNoDelay(true);
 				System.out.println("Connected to "+socket.getRemoteSocketAddress());
 				return; // return if successful
 			} catch (Exception e) {
@@ -103,19 +112,24 @@ public class ClientSlave {
 			in = new Scanner(socket.getInputStream());
 			while (true) {
 				String command = in.nextLine();
+				if (command.startsWith(CMD_SYNC)) {
+					// reply first, anything in between spoils the offset estimation
+					send(CMD_SYNC + " " + System.nanoTime());
+					continue;
+				}
 				System.out.println("\nReceived command: "+command);
 				
 				if (command.startsWith(CMD_PING)) {
 					send(CMD_PING); // respond with ping
 
 				} else if (command.startsWith(CMD_STRESS)) {
-					stress(new Command(command));
+					stress(new Command(command, StressClient.FLAGS));
 					
 				} else if (command.startsWith(CMD_BENCH)) {
 					bench(new Command(command));
 					
 				} else if (command.startsWith(CMD_OBSERVE_START)) {
-					observe_start();
+					observe_start(new Command(command));
 					
 				} else if (command.startsWith(CMD_OBSERVE_FAIL)) {
 					observe_fail();
@@ -127,6 +141,8 @@ public class ClientSlave {
 					ab(new Command(command));
 					
 				} else if (command.startsWith(CMD_EXIT)) {
+					if (vdm != null)
+						vdm.closeLog();
 					System.exit(0);
 					
 				} else {
@@ -143,7 +159,7 @@ public class ClientSlave {
 		}
 	}
 	
-	public void send(String response) {
+	public synchronized void send(String response) {
 		try {
 			socket.getOutputStream().write(new String(response + "\n").getBytes());
 			socket.getOutputStream().flush();
@@ -153,17 +169,18 @@ public class ClientSlave {
 	}
 	
 	private void stress(Command command) throws Exception {
-		if (command.has("start"))
-			StressClient.main(null);
-		if (command.has("stop"))
-			StressClient.stop();
+		if (command.has("-start")) {
+			if (stress != null && stress.isRunning())
+				stress.stop();
+			stress = StressClient.create(command);
+			stress.start();
+		}
+		if (command.has("-stop") && stress != null)
+			stress.stop();
 	}
 
 	private void bench(Command command) throws Exception {
-		if (this.vdm == null) {
-			this.vdm = new VirtualDeviceManager();
-			this.vdm.setVerbose(verbose);
-		}
+		ensureVirtualDeviceManager(verbose);
 		
 		int clients = CoapBench.DEFAULT_CLIENTS;
 		int time = CoapBench.DEFAULT_TIME;
@@ -171,13 +188,33 @@ public class ClientSlave {
 			clients = command.getInt("-c");
 		if (command.has("-t"))
 			time = command.getInt("-t");
-		if (command.has("-latency"))
-			vdm.setEnableLatency(true);
+		// each run starts from the defaults, the options of a previous run
+		// must not leak into it
+		configureOutput(command);
+		vdm.setWindow(command.has("-window") ? command.getInt("-window") : CoapBench.DEFAULT_WINDOW,
+				command.has("-token") ? command.getInt("-token") : 0);
+		vdm.setWorkloadMix(command.has("-mix") ? WorkloadMix.read(command.getString("-mix")) : null);
+		int blockSize = command.has("-block") ? command.getInt("-block") : 0;
+		int uploadSize = command.has("-upload") ? command.getInt("-upload") : 0;
+		if (uploadSize > 0 && blockSize == 0)
+			blockSize = CoapBench.DEFAULT_BLOCK_SIZE;
+		vdm.setBlockSize(blockSize);
+		vdm.setUploadSize(uploadSize);
+		vdm.setHttpBody(command.has("-http-body") ? command.getString("-http-body") : null);
+		vdm.setExpectedCode(command.has("-expect-code") ? command.getString("-expect-code") : null);
+		vdm.setExpectedFormat(command.has("-expect-format") ? command.getInt("-expect-format") : -1);
+		vdm.setCheckPayload(command.has("-check-payload"));
+		vdm.setRate(command.has("-rate") ? command.getInt("-rate") : 0);
+		vdm.setNio(command.has("-nio"));
+		vdm.setVirtualThreads(command.has("-vthreads"));
 		
 		List<String> parameters = command.getParameters();
 		if (parameters.size() > 0) {
 			URI uri = new URI(parameters.get(0));
 			vdm.setURI(uri);
+			vdm.setRun(command.has("-run") ? command.getInt("-run") : 0);
+			if (command.has("-start-nanos"))
+				vdm.setStartTime(command.getLong("-start-nanos"));
 			vdm.start(clients, time * 1000);
 
 		} else if (command.has("-new-log")) {
@@ -191,12 +228,24 @@ public class ClientSlave {
 		}
 	}
 	
+	/*
+	 * Applies the latency and output options, which bench and observe share.
+	 */
+	private void configureOutput(Command command) {
+		vdm.setEnableLatency(command.has("-latency"));
+		vdm.setLatencyUnit(command.has("-latency-unit") ? LatencyUnit.fromSymbol(command.getString("-latency-unit")) : LatencyUnit.MILLISECONDS);
+		ResultSink.Format seriesFormat = command.has("-series") ? ResultSink.Format.fromName(command.getString("-series")) : null;
+		int sampleInterval = command.has("-interval") ? command.getInt("-interval") : 0;
+		if (seriesFormat != null && sampleInterval == 0)
+			sampleInterval = CoapBench.DEFAULT_SAMPLE_INTERVAL;
+		vdm.setSeriesFormat(seriesFormat);
+		vdm.setSampleInterval(sampleInterval);
+		vdm.setResultFormat(command.has("-results") ? ResultSink.Format.fromName(command.getString("-results")) : null);
+	}
+
 	private void observe(Command command) throws Exception {
 		InetSocketAddress targetAddr = null;
-		if (this.vdm == null) {
-			this.vdm = new VirtualDeviceManager();
-			this.vdm.setVerbose(true);
-		}
+		ensureVirtualDeviceManager(true);
 		
 		int servers = CoapBench.DEFAULT_CLIENTS;
 		int time = CoapBench.DEFAULT_TIME;
@@ -204,10 +253,17 @@ public class ClientSlave {
 			servers = command.getInt("-s");
 		if (command.has("-t"))
 			time = command.getInt("-t");
-		if (command.has("-non"))
-			vdm.setConfirmable(false);
-		if (command.has("-latency"))
-			vdm.setEnableLatency(true);
+		// as for bench, each run starts from the defaults
+		vdm.setConfirmable(!command.has("-non"));
+		vdm.setRelations(command.has("-relations") ? command.getInt("-relations") : 1);
+		vdm.setSenders(command.has("-senders") ? command.getInt("-senders") : MultiObserverVirtualServer.DEFAULT_SENDERS);
+		vdm.setRelationRate(command.has("-relation-rate") ? command.getInt("-relation-rate") : 0);
+		vdm.setNotificationRate(command.has("-notify-rate") ? command.getInt("-notify-rate") : 0);
+		vdm.setMaxNotificationRate(command.has("-max-rate") ? command.getInt("-max-rate") : 0);
+		vdm.setArrival(command.has("-arrival") ? NotificationPacer.Arrival.fromName(command.getString("-arrival")) : NotificationPacer.Arrival.FIXED);
+		vdm.setBurst(command.has("-burst") ? command.getInt("-burst") : NotificationPacer.DEFAULT_BURST);
+		vdm.setVirtualThreads(command.has("-vthreads"));
+		configureOutput(command);
 		
 		List<String> parameters = command.getParameters();
 		if (parameters.size() > 0) {
@@ -228,6 +284,7 @@ public class ClientSlave {
 			}
 			
 			// begin operation (spawning devices, registration)
+			vdm.setRun(command.has("-run") ? command.getInt("-run") : 0);
 			vdm.start(servers, time * 1000, false);
 			
 			// wait for all the servers to finish registering with the observer
@@ -258,11 +315,28 @@ public class ClientSlave {
 		}
 	}
 	
-	private void observe_start() throws Exception {
+	private void ensureVirtualDeviceManager(boolean verbose) throws Exception {
+		if (this.vdm == null) {
+			this.vdm = new VirtualDeviceManager();
+			this.vdm.setVerbose(verbose);
+			// stream the results of runs started by the master back to it
+			this.vdm.setResultListener(new VirtualDeviceManager.ResultListener() {
+				@Override
+				public void onResult(RunResult result) {
+					if (result.getRun() > 0)
+						send(result.encode());
+				}
+			});
+		}
+	}
+	
+	private void observe_start(Command command) throws Exception {
 		if (vdm == null || vdm.getDeviceCount() == 0) {
 			System.err.println("Observe benchmark error: Test hasn't been defined yet.");
 			return;
 		}
+		if (command.has("-start-nanos"))
+			vdm.setStartTime(command.getLong("-start-nanos"));
 		if (vdm.getNumberOfDevicesAtBarrier() == vdm.getDeviceCount())
 			vdm.joinBarrier();
 		else throw new Exception("Premature test trigger (ready are " + vdm.getNumberOfDevicesAtBarrier() + "/" + vdm.getDeviceCount() + " initialized devices); check the master's status.");
@@ -20,7 +20,12 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 
+import org.eclipse.californium.tools.coapbench.ConcurrencySearch;
+import org.eclipse.californium.tools.coapbench.LatencyUnit;
+import org.eclipse.californium.tools.coapbench.ResultSink;
+import org.eclipse.californium.tools.coapbench.Scenario;
 import org.eclipse.californium.tools.coapbench.VirtualDeviceManager;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
 
 
 public class CoapBench {
@@ -35,9 +40,13 @@ public class CoapBench {
 	public static final int DEFAULT_CLIENTS = 1;
 	public static final int DEFAULT_SERVERS = 1;
 	public static final int DEFAULT_TIME = 30; // [s]
+	public static final int DEFAULT_WINDOW = 1;
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+	public static final int DEFAULT_SAMPLE_INTERVAL = 1000; // [ms]
 
 	public static final String DEFAULT_MASTER_ADDRESS = "localhost";
 	public static final int DEFAULT_MASTER_PORT = 58888; 
+	public static final String DEFAULT_SCENARIO_RESULT = "scenario_result.json";
 	
 	public static void main(String[] args) {
 		try {
@@ -65,8 +74,28 @@ public class CoapBench {
 		String bindAddr = null;
 		String clients = ""+DEFAULT_CLIENTS;
 		int time = DEFAULT_TIME;
+		int window = DEFAULT_WINDOW;
+		int tokenLength = 0;
+		String mixFile = null;
+		String httpBody = null;
+		String expectCode = null;
+		int expectFormat = -1;
+		boolean checkPayload = false;
+		int blockSize = 0;
+		int uploadSize = 0;
+		int rate = 0;
+		int sampleInterval = 0;
+		String seriesFormat = null;
+		String resultFormat = null;
+		String search = null;
+		double maxP99 = 0;
+		double maxTimeouts = -1;
+		int pause = -1;
 		int index = 0;
 		boolean withLatency = false;
+		String latencyUnit = null;
+		boolean nio = false;
+		boolean virtualThreads = false;
 		while (index < args.length) {
 			String arg = args[index];
 			
@@ -75,11 +104,94 @@ public class CoapBench {
 					throw new IllegalArgumentException("Missing argument for -c");
 				}
 				clients = args[index+1];
+			} else if ("-search".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -search");
+				}
+				search = args[index+1];
+			} else if ("-max-p99".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -max-p99");
+				}
+				maxP99 = Double.parseDouble(args[index+1]);
+				withLatency = true;
+			} else if ("-max-timeouts".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -max-timeouts");
+				}
+				maxTimeouts = Double.parseDouble(args[index+1]);
+			} else if ("-pause".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -pause");
+				}
+				pause = Integer.parseInt(args[index+1]);
 			} else if ("-t".equals(arg)) {
 				if (index + 1 == args.length) {
 					throw new IllegalArgumentException("Missing argument for -t");
 				}
 				time = Integer.parseInt(args[index+1]);
+			} else if ("-window".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -window");
+				}
+				window = Integer.parseInt(args[index+1]);
+			} else if ("-token".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -token");
+				}
+				tokenLength = Integer.parseInt(args[index+1]);
+			} else if ("-mix".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -mix");
+				}
+				mixFile = args[index+1];
+			} else if ("-block".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -block");
+				}
+				blockSize = Integer.parseInt(args[index+1]);
+			} else if ("-expect-code".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -expect-code");
+				}
+				expectCode = args[index+1];
+			} else if ("-expect-format".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -expect-format");
+				}
+				expectFormat = Integer.parseInt(args[index+1]);
+			} else if ("-check-payload".equals(arg)) {
+				checkPayload = true; index++; continue;
+			} else if ("-http-body".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -http-body");
+				}
+				httpBody = args[index+1];
+			} else if ("-upload".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -upload");
+				}
+				uploadSize = Integer.parseInt(args[index+1]);
+			} else if ("-rate".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -rate");
+				}
+				rate = Integer.parseInt(args[index+1]);
+			} else if ("-interval".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -interval");
+				}
+				sampleInterval = Integer.parseInt(args[index+1]);
+			} else if ("-series".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -series");
+				}
+				seriesFormat = args[index+1];
+			} else if ("-results".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -results");
+				}
+				resultFormat = args[index+1];
 			} else if ("-b".equals(arg)) {
 				if (index + 1 == args.length) {
 					throw new IllegalArgumentException("Missing argument for -b");
@@ -87,6 +199,16 @@ public class CoapBench {
 				bindAddr = args[index+1];
 			} else if ("-latency".equals(arg)) {
 				withLatency = true; index++; continue;
+			} else if ("-latency-unit".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -latency-unit");
+				}
+				latencyUnit = args[index+1];
+				withLatency = true;
+			} else if ("-nio".equals(arg)) {
+				nio = true; index++; continue;
+			} else if ("-vthreads".equals(arg)) {
+				virtualThreads = true; index++; continue;
 			} else if ("-h".equals(arg)) {
 				printUsage();
 				return;
@@ -119,7 +241,36 @@ public class CoapBench {
 		int[] series = convertSeries(clients);
 		VirtualDeviceManager manager = new VirtualDeviceManager(uri, bindSAddr);
 		if (withLatency) manager.setEnableLatency(true);
-		manager.runConcurrencySeries(series, time*1000);
+		if (latencyUnit != null) manager.setLatencyUnit(LatencyUnit.fromSymbol(latencyUnit));
+		if (window > 1) manager.setWindow(window);
+		if (tokenLength > 0) manager.setTokenLength(tokenLength);
+		if (mixFile != null) manager.setWorkloadMix(WorkloadMix.read(mixFile));
+		if (uploadSize > 0 && blockSize == 0) blockSize = DEFAULT_BLOCK_SIZE;
+		if (blockSize > 0) manager.setBlockSize(blockSize);
+		if (uploadSize > 0) manager.setUploadSize(uploadSize);
+		if (httpBody != null) manager.setHttpBody(httpBody);
+		if (expectCode != null) manager.setExpectedCode(expectCode);
+		if (expectFormat >= 0) manager.setExpectedFormat(expectFormat);
+		if (checkPayload) manager.setCheckPayload(true);
+		if (rate > 0) manager.setRate(rate);
+		if (seriesFormat != null) manager.setSeriesFormat(ResultSink.Format.fromName(seriesFormat));
+		if (resultFormat != null) manager.setResultFormat(ResultSink.Format.fromName(resultFormat));
+		if (seriesFormat != null && sampleInterval == 0) sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+		if (sampleInterval > 0) manager.setSampleInterval(sampleInterval);
+		if (nio) manager.setNio(true);
+		if (virtualThreads) manager.setVirtualThreads(true);
+		if (pause >= 0) manager.setPause(pause);
+		if (search != null) {
+			String[] range = search.split(":");
+			if (range.length != 2)
+				throw new IllegalArgumentException("Search range must be MIN:MAX, but is " + search);
+			ConcurrencySearch knee = new ConcurrencySearch(manager, Integer.parseInt(range[0]), Integer.parseInt(range[1]), time*1000);
+			if (maxP99 > 0) knee.setMaxP99(manager.getLatencyUnit().toMicros(maxP99));
+			if (maxTimeouts >= 0) knee.setMaxTimeoutRate(maxTimeouts / 100);
+			knee.search();
+		} else {
+			manager.runConcurrencySeries(series, time*1000);
+		}
 		
 //		Thread.sleep(time*1000 + 1000);
 		System.exit(0); // stop all threads from virtual client manager
@@ -127,6 +278,8 @@ public class CoapBench {
 	
 	public static void mainMaster(String[] args) throws Exception {
 		int port = DEFAULT_MASTER_PORT;
+		String scenario = null;
+		String result = DEFAULT_SCENARIO_RESULT;
 		int index = 1;
 		while (index < args.length) {
 			String arg = args[index];
@@ -135,6 +288,16 @@ public class CoapBench {
 					throw new IllegalArgumentException("Missing argument for -p");
 				}
 				port = Integer.parseInt(args[index+1]);
+			} else if ("-scenario".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -scenario");
+				}
+				scenario = args[index+1];
+			} else if ("-result".equals(arg)) {
+				if (index + 1 == args.length) {
+					throw new IllegalArgumentException("Missing argument for -result");
+				}
+				result = args[index+1];
 			} else {
 				System.err.println("Unknwon arg "+arg);
 				printUsage();
@@ -142,6 +305,11 @@ public class CoapBench {
 			}
 			index += 2;
 		}
+		if (scenario != null) {
+			// unattended, e.g., for nightly runs, the exit code tells if all stages completed
+			boolean complete = new ClientMaster(port).runScenario(Scenario.read(scenario), result);
+			System.exit(complete ? 0 : 1);
+		}
 		new ClientMaster(port).start();
 	}
 	
@@ -225,12 +393,70 @@ public class CoapBench {
 				+ "\n            This value can be of the form <from>:<step>:<to>, e.g., 10:2:16 for a subsequent run of 10, 12, 14, 16 clients."
 				+ "\n    -t TIME"
 				+ "\n            Limit the duration of the benchmark to TIME seconds (default is " + DEFAULT_TIME + ")."
+				+ "\n    -search MIN:MAX"
+				+ "\n            Search the concurrency between MIN and MAX with the highest throughput within the ceilings"
+				+ "\n            instead of running -c. The concurrency is doubled until a ceiling is exceeded or the throughput"
+				+ "\n            levels off, then the last step is bisected. Each run takes TIME seconds."
+				+ "\n    -max-p99 LATENCY"
+				+ "\n            Ceiling of the p99 latency for -search in the latency unit. Implies -latency."
+				+ "\n    -max-timeouts PERCENT"
+				+ "\n            Ceiling of the timeouts for -search in percent of all requests (default is "
+				+ (ConcurrencySearch.DEFAULT_MAX_TIMEOUT_RATE * 100) + ")."
+				+ "\n    -pause MS"
+				+ "\n            Pause between the runs of a series or search (default is " + VirtualDeviceManager.DEFAULT_PAUSE + " ms)."
+				+ "\n    -latency"
+				+ "\n            Measure the latency of the requests and log its percentiles."
+				+ "\n    -latency-unit UNIT"
+				+ "\n            Log the latency percentiles in us or ms (default is ms). Implies -latency."
+				+ "\n    -window WINDOW"
+				+ "\n            Number of requests each client keeps in flight (default is " + DEFAULT_WINDOW + ")."
+				+ "\n            With a window larger than 1, the clients are pipelined and do not wait for a response before sending the next request."
+				+ "\n    -token LENGTH"
+				+ "\n            Add a rolling token of LENGTH bytes (1 to 8) to the requests and match the responses by token."
+				+ "\n            This makes the server match its exchanges by token like for real clients."
+				+ "\n    -mix FILE"
+				+ "\n            Send a weighted mix of requests read from FILE instead of GET requests to the URI."
+				+ "\n            Each line of FILE is \"METHOD PATH PAYLOAD-SIZE WEIGHT\", e.g., \"POST /storage 64 85\"."
+				+ "\n            The paths are resolved against the URI. All 2.xx responses are accepted."
+				+ "\n    -block SIZE"
+				+ "\n            Download the URI block-wise with Block2 and the block size SIZE (16 to 1024)."
+				+ "\n            The clients then count transfers and also log the blocks, bytes/s and the latency per block."
+				+ "\n    -upload BYTES"
+				+ "\n            Upload BYTES with a block-wise Block1 PUT instead (default block size is " + DEFAULT_BLOCK_SIZE + ")."
+				+ "\n    -expect-code CODE"
+				+ "\n            Accept responses with CODE, e.g., 2.05, a class, e.g., 2.xx, or any (default is 2.05, 2.xx with -mix)."
+				+ "\n            Other responses are counted as rejected per code instead of completed, the run continues."
+				+ "\n    -expect-format FORMAT"
+				+ "\n            Reject responses without the Content-Format FORMAT, e.g., 50 for application/json."
+				+ "\n    -check-payload"
+				+ "\n            Reject responses with a payload different from the first response of the client."
+				+ "\n    -http-body FILE"
+				+ "\n            With an http URI, POST the content of FILE instead of sending GET requests."
+				+ "\n    -rate RATE"
+				+ "\n            Send RATE requests per second in total at a constant rate instead of as fast as possible."
+				+ "\n            The latency is measured from the intended send time, so server stalls are not hidden."
+				+ "\n            Combine it with -window to keep the rate even if the responses are delayed."
+				+ "\n    -interval MS"
+				+ "\n            Log the throughput, timeouts and latencies every MS milliseconds while the benchmark runs."
+				+ "\n    -series FORMAT"
+				+ "\n            Also write these samples into a csv, json (lines) or binary file (default interval is " + DEFAULT_SAMPLE_INTERVAL + " ms)."
+				+ "\n    -results FORMAT"
+				+ "\n            Also write the result of each run with the URI, host and JVM into a csv, json (lines) or binary file."
+				+ "\n    -nio"
+				+ "\n            Drive the clients by one NIO selector loop per core instead of one thread per client."
+				+ "\n            Use this for large numbers of clients, e.g., -c 100000."
+				+ "\n    -vthreads"
+				+ "\n            Run each client on a virtual thread instead of a platform thread (requires Java 21)."
 				+ "\n    -b ADDRESS"
 				+ "\n            Bind the clients to the specified local address (by default the system chooses)."
 				+ "\n"
 				+ "\nOPTIONS for the master are:"
 				+ "\n    -p PORT"
 				+ "\n            The port on which the master waits for slaves."
+				+ "\n    -scenario FILE"
+				+ "\n            Run the stages of the scenario file unattended instead of reading commands from the console."
+				+ "\n    -result FILE"
+				+ "\n            The JSON document to write the results of the scenario to (default " + DEFAULT_SCENARIO_RESULT + ")."
 				+ "\n"
 				+ "\nOPTIONS for the slave are:"
 				+ "\n    -a ADDRESS"
@@ -244,9 +470,31 @@ public class CoapBench {
 				+ "\nStart 50 clients that concurrently send GET requests for 60 seconds"
 				+ "\n    java -jar coapbench.jar -c 50 -t 60 coap://localhost:5683/benchmark"
 				+ "\n"
+				+ "\nFind the concurrency with the highest throughput and a p99 latency of at most 20 ms"
+				+ "\n    java -jar coapbench.jar -search 1:1024 -max-p99 20 -t 10 coap://localhost:5683/benchmark"
+				+ "\n"
+				+ "\nStart 4 clients, each keeping 32 requests in flight"
+				+ "\n    java -jar coapbench.jar -c 4 -window 32 -t 60 coap://localhost:5683/benchmark"
+				+ "\n"
+				+ "\nSend 20000 requests per second from 100 clients and measure the latency"
+				+ "\n    java -jar coapbench.jar -c 100 -window 8 -rate 20000 -latency -t 60 coap://localhost:5683/benchmark"
+				+ "\n"
+				+ "\nCompare with HTTP using 50 keep-alive connections with 4 pipelined requests each"
+				+ "\n    java -jar coapbench.jar -c 50 -window 4 -latency -t 60 http://localhost:8080/benchmark"
+				+ "\n"
+				+ "\nThe same through the cf-polyfill proxy, with request.json containing"
+				+ "\n{\"method\":\"GET\",\"url\":\"coap://localhost:5683/benchmark\"} in one line"
+				+ "\n    java -jar coapbench.jar -c 50 -http-body request.json -latency -t 60 http://localhost:8080/request"
+				+ "\n"
+				+ "\nDownload a large resource block-wise in blocks of 64 bytes with 10 clients"
+				+ "\n    java -jar coapbench.jar -c 10 -block 64 -latency -t 60 coap://localhost:5683/large"
+				+ "\n"
 				+ "\nStart a master listening on port 8888 for slaves"
 				+ "\n    java -jar coapbench.jar -master -p 8888"
 				+ "\n"
+				+ "\nRun the scenario nightly.txt with the connecting slaves and write the results to nightly.json"
+				+ "\n    java -jar coapbench.jar -master -p 8888 -scenario nightly.txt -result nightly.json"
+				+ "\n"
 				+ "\nStart a slave which connects with the specified master"
 				+ "\n    java -jar coapbench.jar -slave -a 192.168.1.33 -p 8888"
 			);
@@ -16,97 +16,379 @@
  ******************************************************************************/
 package org.eclipse.californium.tools;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import org.eclipse.californium.tools.coapbench.Command;
 import org.eclipse.californium.tools.coapbench.producer.EcoMessageProducer;
 import org.eclipse.californium.tools.coapbench.Meter;
 
-import org.eclipse.californium.elements.RawData;
-
 /**
- * Sends a burst of requests to the server. After a burst it pauses. As soon as
- * half of the requests have been answered, another burst starts.
+ * Sends requests to the servers as fast as a budget of outstanding requests
+ * allows. Each socket may have up to occupation requests in flight, each
+ * response returns a credit for another request, see {@link Meter}.
+ * <p>
+ * The stress client opens a number of sockets, by default one per core, each
+ * with its own sender and receiver thread. The targets are distributed over
+ * the sockets. A socket with a single target is connected to it, a socket with
+ * several targets sends to them in turn. Each socket uses its own source port,
+ * so a UDP load balancer in front of a cluster of servers spreads the load over
+ * its members. With SO_REUSEPORT all sockets share one port instead, and the
+ * kernel spreads the responses over the sockets.
+ * <p>
+ * The requests are written into a ring of reusable direct buffers and sent in
+ * batches over a non-blocking {@link DatagramChannel}. The responses are
+ * received into a single reusable buffer. Sending and receiving therefore do
+ * not allocate anything per message. A request, which the channel does not
+ * accept because the socket's send buffer is full, is dropped and counted.
  */
 public class StressClient {
 
-	public static final String HOST = null; //ClientSlave.MASTER_ADDRESS;
-	public static final int PORT = 5683;
-	public static final String TARGET = "hello";
-	public static final int OCCUPATION = 20000;
-	public static final int CLIENT_COUNT = 1;
+	public static final String DEFAULT_TARGET = "coap://localhost:5683/hello";
+	public static final int DEFAULT_OCCUPATION = 20000;
+	public static final int DEFAULT_SOCKETS = Runtime.getRuntime().availableProcessors();
+	public static final int DEFAULT_REPORT_INTERVAL = 1000; // ms
 	
-	private static InetAddress destination;
-	private static Meter meter;
+	/** Number of requests sent per batch. */
+	public static final int BATCH_SIZE = 64;
+	/** Size of each send and the receive buffer. */
+	public static final int BUFFER_SIZE = 1500;
 	
-	private DatagramSocket socket;
-	private EcoMessageProducer producer;
+	/** Options of the stress command without value. */
+	public static final String[] FLAGS = { "-start", "-stop", "-reuseport" };
 	
-	private static boolean running;
+	private final List<URI> targets;
+	private int sockets = DEFAULT_SOCKETS;
+	private int occupation = DEFAULT_OCCUPATION;
+	private int port; // 0 for ephemeral ports
+	private boolean reusePort;
 	
-	public StressClient() throws Exception {
-		this.producer = new EcoMessageProducer("coap://"+HOST+":"+PORT+"/"+TARGET);
-		this.socket = new DatagramSocket();
-		socket.setReceiveBufferSize(10*1000*1000);
-		socket.setSendBufferSize(10*1000*1000);
-	}
+	private List<StressSocket> stressers = new ArrayList<StressSocket>();
+	private Timer timer;
 	
-	public void start() {
-		new Thread("Receiver") {
-			public void run() { receiveResponses(); } }.start();
-		new Thread("Sender") {
-			public void run() { sendRequests(); } }.start();
+	private volatile boolean running;
+	
+	public StressClient(List<URI> targets) {
+		if (targets.isEmpty())
+			throw new IllegalArgumentException("Stress client requires at least one target");
+		this.targets = targets;
 	}
+	
+	public void start() throws IOException {
+		if (running)
+			stop();
+		running = true;
 		
-	public void sendRequests() {
-		try {
-			System.out.println("Send requests to "+destination+":"+PORT);
-			while (running) {
-				RawData data = producer.next();
-				DatagramPacket p = new DatagramPacket(data.getBytes(), data.getSize());
-				p.setAddress(destination);
-				p.setPort(PORT);
-				socket.send(p);
-				meter.requested();
+		// A shared port may deliver a response to any of the sockets
+		Meter shared = reusePort ? new Meter(occupation * sockets) : null;
+		
+		for (int i = 0; i < sockets; i++) {
+			List<URI> assigned = new ArrayList<URI>();
+			if (sockets >= targets.size()) {
+				assigned.add(targets.get(i % targets.size()));
+			} else {
+				for (int j = i; j < targets.size(); j += sockets)
+					assigned.add(targets.get(j));
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+			int local = port == 0 ? 0 : reusePort ? port : port + i;
+			Meter meter = shared != null ? shared : new Meter(occupation);
+			stressers.add(new StressSocket(i, assigned, local, meter));
 		}
+		
+		System.out.println("Stress "+targets.size()+" targets with "+sockets+" sockets");
+		for (StressSocket stresser : stressers)
+			stresser.start();
+		
+		timer = new Timer("Stress-Reporter", true);
+		timer.schedule(new Reporter(), DEFAULT_REPORT_INTERVAL, DEFAULT_REPORT_INTERVAL);
 	}
 	
-	public void receiveResponses() {
+	public void stop() {
 		try {
-			byte[] buf = new byte[100];
-			while (running) {
-				DatagramPacket p = new DatagramPacket(buf, buf.length);
-				socket.receive(p);
-				meter.responded();
+			running = false;
+			if (timer != null)
+				timer.cancel();
+			Thread.sleep(100);
+			for (StressSocket stresser : stressers)
+				stresser.meter.resume();
+			long sent = 0, dropped = 0, shortSends = 0;
+			for (StressSocket stresser : stressers) {
+				sent += stresser.sent;
+				dropped += stresser.dropped;
+				shortSends += stresser.shortSends;
+				stresser.channel.close();
 			}
+			System.out.format("sent %d, received %d, dropped %d, short sends %d\n",
+					sent, getResponded(), dropped, shortSends);
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			stressers.clear();
 		}
 	}
 	
-	public static void main(String[] args) throws Exception {
-		running = true;
-		destination = InetAddress.getByName(HOST);
-		meter = new Meter(OCCUPATION, CLIENT_COUNT);
-		StressClient[] stresser = new StressClient[CLIENT_COUNT];
-		for (int i=0;i<CLIENT_COUNT;i++)
-			stresser[i] = new StressClient();
+	/**
+	 * Sums up the responses of all meters. Sockets sharing a port also share a
+	 * meter, which must only be counted once.
+	 */
+	private long getResponded() {
+		Set<Meter> meters = new LinkedHashSet<Meter>();
+		for (StressSocket stresser : stressers)
+			meters.add(stresser.meter);
+		long responded = 0;
+		for (Meter meter : meters)
+			responded += meter.getResponded();
+		return responded;
+	}
+	
+	public void setSockets(int sockets) {
+		if (sockets < 1)
+			throw new IllegalArgumentException("Number of sockets must be at least 1");
+		this.sockets = sockets;
+	}
+	
+	public void setOccupation(int occupation) {
+		this.occupation = occupation;
+	}
+	
+	/**
+	 * Sets the first local port. Socket i binds to port + i, or all sockets
+	 * bind to port, if SO_REUSEPORT is used.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+	
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+	
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * Prints the merged throughput of all sockets.
+	 */
+	private class Reporter extends TimerTask {
+		
+		private long last = System.nanoTime();
+		private long lastResponded;
+		private float avg[] = new float[10];
+		private int avgp = 0;
+		
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			long responded = getResponded();
+			long dropped = 0;
+			for (StressSocket stresser : stressers)
+				dropped += stresser.dropped;
+			float dt = (now - last) / 1000000f;
+			float through = (responded - lastResponded) * 1000L / dt;
+			System.out.format("received %10d. In %4d  ms, %8d per sec, 10avg: %8d, dropped %d\n",
+					responded, (int) dt, (int) through, (int) nextAvg(through), dropped);
+			last = now;
+			lastResponded = responded;
+		}
 		
-		for (int i=0;i<CLIENT_COUNT;i++)
-			stresser[i].start();
+		private float nextAvg(float val) {
+			avg[avgp++ % avg.length] = val;
+			float sum = 0;
+			int n = Math.min(avgp, avg.length);
+			for (int i = 0; i < n; i++)
+				sum += avg[i];
+			return sum / n;
+		}
 	}
 	
-	public static void stop() {
-		try {
-			running = false;
-			Thread.sleep(100);
-			meter.resume();
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * A socket with its sender and receiver.
+	 */
+	private class StressSocket {
+		
+		private final int id;
+		private final DatagramChannel channel;
+		private final Meter meter;
+		private final EcoMessageProducer[] producers;
+		private final InetSocketAddress[] destinations;
+		private final ByteBuffer[] ring = new ByteBuffer[BATCH_SIZE];
+		private final int[] ringTargets = new int[BATCH_SIZE];
+		private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		
+		// written by the sender only
+		private volatile long sent;
+		private volatile long dropped;
+		private volatile long shortSends;
+		
+		private StressSocket(int id, List<URI> targets, int port, Meter meter) throws IOException {
+			this.id = id;
+			this.meter = meter;
+			this.producers = new EcoMessageProducer[targets.size()];
+			this.destinations = new InetSocketAddress[targets.size()];
+			for (int i = 0; i < targets.size(); i++) {
+				URI uri = targets.get(i);
+				producers[i] = new EcoMessageProducer(uri.toString());
+				destinations[i] = new InetSocketAddress(InetAddress.getByName(uri.getHost()),
+						uri.getPort() == -1 ? 5683 : uri.getPort());
+			}
+			for (int i = 0; i < ring.length; i++)
+				ring[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			this.channel = DatagramChannel.open();
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, 10*1000*1000);
+			channel.setOption(StandardSocketOptions.SO_SNDBUF, 10*1000*1000);
+			if (reusePort)
+				setReusePort(channel);
+			channel.bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+			if (destinations.length == 1)
+				channel.connect(destinations[0]);
 		}
+		
+		private void start() {
+			new Thread("Receiver-"+id) {
+				public void run() { receiveResponses(); } }.start();
+			new Thread("Sender-"+id) {
+				public void run() { sendRequests(); } }.start();
+		}
+		
+		private void sendRequests() {
+			try {
+				int target = 0;
+				while (running) {
+					for (int i = 0; i < ring.length; i++) {
+						ByteBuffer buffer = ring[i];
+						buffer.clear();
+						producers[target].next(buffer);
+						buffer.flip();
+						ringTargets[i] = target;
+						if (++target == producers.length)
+							target = 0;
+					}
+					for (int i = 0; i < ring.length; i++) {
+						ByteBuffer buffer = ring[i];
+						int size = buffer.remaining();
+						int n;
+						meter.requested();
+						try {
+							if (channel.isConnected())
+								n = channel.write(buffer);
+							else
+								n = channel.send(buffer, destinations[ringTargets[i]]);
+						} catch (PortUnreachableException e) {
+							n = 0; // ICMP of a previous request
+						}
+						if (n == 0) {
+							++dropped;
+							meter.dropped();
+						} else {
+							if (n < size)
+								++shortSends;
+							++sent;
+						}
+					}
+				}
+			} catch (Exception e) {
+				if (running)
+					e.printStackTrace();
+			}
+		}
+		
+		private void receiveResponses() {
+			try (Selector selector = Selector.open()) {
+				channel.register(selector, SelectionKey.OP_READ);
+				while (running) {
+					selector.select(100);
+					selector.selectedKeys().clear();
+					// drain all pending responses
+					while (true) {
+						receiveBuffer.clear();
+						try {
+							if (channel.receive(receiveBuffer) == null)
+								break;
+						} catch (PortUnreachableException e) {
+							continue;
+						}
+						meter.responded();
+					}
+				}
+			} catch (IOException e) {
+				if (running)
+					e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Enables SO_REUSEPORT. The option is looked up by name, since
+	 * {@link StandardSocketOptions} only has it since Java 9.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void setReusePort(DatagramChannel channel) throws IOException {
+		for (SocketOption<?> option : channel.supportedOptions()) {
+			if ("SO_REUSEPORT".equals(option.name())) {
+				channel.setOption((SocketOption<Boolean>) option, true);
+				return;
+			}
+		}
+		throw new IOException("SO_REUSEPORT is not supported on this platform");
+	}
+	
+	/**
+	 * Creates a stress client from a command, e.g.,
+	 * <pre>
+	 * stress -start -sockets 8 -port 40000 coap://10.0.0.1/hello coap://10.0.0.2/hello
+	 * </pre>
+	 * Without any URI, the client stresses {@link #DEFAULT_TARGET}. The
+	 * command must be parsed with the {@link #FLAGS}, otherwise a flag takes
+	 * the following target as value.
+	 * 
+	 * @param command command with options and the target URIs as parameters
+	 * @return the stress client
+	 * @throws Exception if a target is not a valid URI
+	 */
+	public static StressClient create(Command command) throws Exception {
+		List<URI> targets = new ArrayList<URI>();
+		for (String parameter : command.getParameters())
+			targets.add(new URI(parameter));
+		if (targets.isEmpty())
+			targets.add(new URI(DEFAULT_TARGET));
+		StressClient client = new StressClient(targets);
+		if (command.has("-sockets"))
+			client.setSockets(command.getInt("-sockets"));
+		if (command.has("-occupation"))
+			client.setOccupation(command.getInt("-occupation"));
+		if (command.has("-port"))
+			client.setPort(command.getInt("-port"));
+		if (command.has("-reuseport")) {
+			if (!command.getString("-reuseport").isEmpty())
+				throw new Command.CommandException("-reuseport takes no value, but has " + command.getString("-reuseport"));
+			if (!command.has("-port"))
+				throw new Command.CommandException("-reuseport requires -port");
+			client.setReusePort(true);
+		}
+		return client;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		StringBuilder builder = new StringBuilder("stress");
+		for (String arg : args)
+			builder.append(" ").append(arg);
+		create(new Command(builder.toString(), FLAGS)).start();
 	}
 }
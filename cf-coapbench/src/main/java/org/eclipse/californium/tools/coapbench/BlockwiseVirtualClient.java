@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+
+/**
+ * A virtual client for block-wise transfers. The client either downloads the
+ * resource with a Block2 GET sequence or uploads a body of a given size with a
+ * Block1 PUT sequence. A transfer is complete with the last block. The count
+ * and the latencies of the client refer to the transfers, the client also
+ * counts the blocks and bytes and measures the latency of each block.
+ * <p>
+ * The requests are serialized once with a block option of three bytes. For
+ * each block, the block number and the MID are patched into this template. The
+ * last upload block is sent with a shorter payload by shortening the datagram.
+ * Like a {@link VirtualClient}, the client has a single request in flight.
+ */
+public class BlockwiseVirtualClient implements Runnable, VirtualClientDevice {
+
+	public static final int TIMEOUT = VirtualClient.TIMEOUT;
+	public static final int MIN_BLOCK_SIZE = 16;
+	public static final int MAX_BLOCK_SIZE = 1024;
+
+	private static final int RECEIVE_BUFFER_SIZE = 2048;
+	// largest block number of a three byte block option
+	private static final int TEMPLATE_NUM = 0xFFFF;
+
+	private final UdpDataSerializer serializer = new UdpDataSerializer();
+
+	private DatagramSocket socket;
+	private DatagramPacket pSend;
+	private DatagramPacket pRecv;
+
+	private boolean runnable;
+	// written by a single thread each, read by the sampler
+	private volatile int counter;
+	private volatile int lost;
+	private volatile long blocks;
+	private volatile long bytes;
+
+	private URI uri;
+	private InetAddress destAddress;
+	private int destPort;
+
+	private int blockSize;
+	private int szx;
+	private int uploadSize;
+
+	private byte[] request;
+	private int blockOffset; // position of the block option value in the request
+	private int payloadOffset; // position of the payload in the request
+	private int mid;
+
+	private LatencyHistogram latencies;
+	private LatencyHistogram blockLatencies;
+
+	private long start;
+	private long interval;
+	private long nextIntended;
+
+	private boolean checkLatency = false;
+	private final ResponseStats stats = new ResponseStats();
+
+	/**
+	 * Creates a block-wise client.
+	 * 
+	 * @param uri target URI
+	 * @param addr local address, or {@code null}
+	 * @param blockSize block size, a power of two from 16 to 1024
+	 * @param uploadSize number of bytes to upload with Block1, or 0 to
+	 *            download the resource with Block2
+	 * @throws Exception if the socket cannot be created
+	 */
+	public BlockwiseVirtualClient(URI uri, InetSocketAddress addr, int blockSize, int uploadSize) throws Exception {
+		if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE || Integer.bitCount(blockSize) != 1)
+			throw new IllegalArgumentException("Block size must be a power of two in [" + MIN_BLOCK_SIZE + ", " + MAX_BLOCK_SIZE + "], but is " + blockSize);
+		if (uploadSize < 0 || uploadSize > (TEMPLATE_NUM + 1) * blockSize)
+			throw new IllegalArgumentException("Upload size must be in [0, " + (TEMPLATE_NUM + 1) * blockSize + "], but is " + uploadSize);
+		this.blockSize = blockSize;
+		this.szx = Integer.numberOfTrailingZeros(blockSize) - 4;
+		this.uploadSize = uploadSize;
+		this.pSend = new DatagramPacket(new byte[0], 0);
+		this.pRecv = new DatagramPacket(new byte[RECEIVE_BUFFER_SIZE], RECEIVE_BUFFER_SIZE);
+		this.runnable = true;
+		setURI(uri);
+		bind(addr);
+	}
+
+	public void bind(InetSocketAddress addr) throws Exception {
+		if (addr == null)
+			this.socket = new DatagramSocket();
+		else
+			this.socket = new DatagramSocket(addr);
+		this.socket.setSoTimeout(TIMEOUT);
+	}
+
+	public void setURI(URI uri) throws UnknownHostException {
+		destAddress = InetAddress.getByName(uri.getHost());
+		if (uri.getPort() == -1)
+			destPort = 5683;
+		else destPort = uri.getPort();
+		this.uri = uri;
+		createTemplate();
+	}
+
+	/*
+	 * Serializes the request once with a block number, which requires three
+	 * bytes, and remembers where to patch the block number.
+	 */
+	private void createTemplate() {
+		Request template;
+		int option;
+		if (uploadSize > 0) {
+			template = new Request(Code.PUT);
+			template.getOptions().setBlock1(szx, true, TEMPLATE_NUM);
+			template.getOptions().setSize1(uploadSize);
+			template.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_OCTET_STREAM);
+			byte[] payload = new byte[blockSize];
+			Arrays.fill(payload, (byte) 'x');
+			template.setPayload(payload);
+			option = RawCoap.OPTION_BLOCK1;
+		} else {
+			template = new Request(Code.GET);
+			template.getOptions().setBlock2(szx, false, TEMPLATE_NUM);
+			option = RawCoap.OPTION_BLOCK2;
+		}
+		template.setType(Type.CON);
+		template.setToken(new byte[0]);
+		template.setMID(0);
+		template.setURI(uri);
+		byte[] bytes = serializer.serializeRequest(template).getBytes();
+		long block = RawCoap.findOption(bytes, bytes.length, option);
+		if (block < 0 || RawCoap.length(block) != 3)
+			throw new IllegalStateException("Cannot find three byte block option " + option + " in request template");
+		this.blockOffset = RawCoap.offset(block);
+		this.payloadOffset = RawCoap.getPayloadOffset(bytes, bytes.length);
+		this.request = bytes;
+		pSend.setData(bytes);
+	}
+
+	public void run() {
+		try {
+			if (latencies != null) {
+				latencies.clear();
+				blockLatencies.clear();
+			}
+			nextIntended = start;
+			pSend.setAddress(destAddress);
+			pSend.setPort(destPort);
+			while (runnable) {
+				long begin;
+				if (interval > 0) {
+					awaitIntended();
+					// measure from the intended time to include the delay
+					begin = nextIntended;
+					nextIntended += interval;
+				} else {
+					begin = System.nanoTime();
+				}
+				if (uploadSize > 0 ? upload() : download()) {
+					if (checkLatency)
+						latencies.recordNanos(System.nanoTime() - begin);
+					counter++;
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Downloads the resource block by block. The next block is requested with
+	 * the block size of the response, in case the server chose a smaller one.
+	 */
+	private boolean download() throws IOException {
+		int num = 0;
+		int size = szx;
+		while (runnable) {
+			RawCoap.setUint(request, blockOffset, 3, (num << 4) | size);
+			int length = exchange(request.length);
+			if (length < 0)
+				return false;
+			byte[] resp = pRecv.getData();
+			if (!checkCode(resp, CoAP.ResponseCode.CONTENT.value))
+				return false;
+			bytes += length - RawCoap.getPayloadOffset(resp, length);
+			int block = RawCoap.getBlock(resp, length, RawCoap.OPTION_BLOCK2);
+			if (block < 0 || (block & 0x08) == 0)
+				return true; // last or only block
+			size = block & 0x07;
+			num = (block >>> 4) + 1;
+		}
+		return false;
+	}
+
+	/*
+	 * Uploads the body block by block. The server confirms each block but the
+	 * last one with 2.31 Continue.
+	 */
+	private boolean upload() throws IOException {
+		int count = (uploadSize + blockSize - 1) / blockSize;
+		for (int num = 0; num < count && runnable; num++) {
+			boolean more = num < count - 1;
+			int payload = more ? blockSize : uploadSize - num * blockSize;
+			RawCoap.setUint(request, blockOffset, 3, (num << 4) | (more ? 0x08 : 0) | szx);
+			int length = exchange(payloadOffset + payload);
+			if (length < 0)
+				return false;
+			byte[] resp = pRecv.getData();
+			if (!checkCode(resp, more ? CoAP.ResponseCode.CONTINUE.value : -1))
+				return false;
+			bytes += payload;
+		}
+		return runnable;
+	}
+
+	/*
+	 * Sends the request with the next MID and waits for the response with the
+	 * same MID. Returns the length of the response, or -1 after a timeout.
+	 */
+	private int exchange(int length) throws IOException {
+		mid = (mid + 1) & 0xFFFF;
+		RawCoap.setMID(request, mid);
+		pSend.setData(request, 0, length);
+		long timestamp = System.nanoTime();
+		socket.send(pSend);
+		try {
+			while (true) {
+				pRecv.setLength(RECEIVE_BUFFER_SIZE);
+				socket.receive(pRecv);
+				if (RawCoap.isMalformed(pRecv.getData(), pRecv.getLength()))
+					stats.record(ResponseStats.Outcome.MALFORMED);
+				else if (RawCoap.getMID(pRecv.getData()) == mid)
+					break;
+				else
+					// a late response of an earlier block
+					stats.record(ResponseStats.Outcome.MID);
+			}
+		} catch (SocketTimeoutException e) {
+			lost++;
+			return -1;
+		}
+		if (checkLatency)
+			blockLatencies.recordNanos(System.nanoTime() - timestamp);
+		blocks++;
+		return pRecv.getLength();
+	}
+
+	/*
+	 * Checks the response code. If expected is -1, any 2.xx code is accepted.
+	 * A wrong code aborts the transfer, which is counted as rejected.
+	 */
+	private boolean checkCode(byte[] resp, int expected) {
+		int c = RawCoap.getCode(resp);
+		if (expected == -1 ? (c >>> 5) == 2 : c == expected)
+			return true;
+		stats.recordCode(c);
+		return false;
+	}
+
+	/*
+	 * Waits until the intended time of the next transfer. If the client is
+	 * behind its schedule, it returns immediately.
+	 */
+	private void awaitIntended() {
+		long delay;
+		while (runnable && (delay = nextIntended - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+	}
+
+	@Override
+	public boolean isRunning() {
+		return runnable;
+	}
+
+	public void stop() {
+		runnable = false;
+	}
+
+	public void reset() {
+		runnable = true;
+		counter = 0;
+		lost = 0;
+		blocks = 0;
+		bytes = 0;
+		stats.clear();
+	}
+
+	/**
+	 * Gets the number of completed transfers.
+	 */
+	public int getCount() {
+		return counter;
+	}
+
+	public int getTimeouts() {
+		return lost;
+	}
+
+	public long getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Gets the number of payload bytes transferred.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the latencies of the transfers.
+	 * 
+	 * @return histogram of the latencies, or {@code null}, if latencies are
+	 *         not measured
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Gets the latencies of the single blocks.
+	 * 
+	 * @return histogram of the latencies, or {@code null}, if latencies are
+	 *         not measured
+	 */
+	public LatencyHistogram getBlockLatencies() {
+		return blockLatencies;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getUploadSize() {
+		return uploadSize;
+	}
+
+	@Override
+	public void setSchedule(long start, long interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("Interval must not be negative, but is " + interval);
+		this.start = start;
+		this.interval = interval;
+	}
+
+	@Override
+	public int getWindow() {
+		return 1;
+	}
+
+	/**
+	 * Ignored, a block-wise client always has a single request in flight.
+	 */
+	@Override
+	public void setWindow(int window) { }
+
+	/**
+	 * Ignored, a block-wise client checks the codes of the block-wise
+	 * transfer only.
+	 */
+	@Override
+	public void setResponseValidator(ResponseValidator validator) { }
+
+	@Override
+	public ResponseStats getResponseStats() {
+		return stats;
+	}
+
+	/**
+	 * Ignored, a block-wise client sends its requests without token.
+	 */
+	@Override
+	public void setTokenLength(int tokenLength) { }
+
+	/**
+	 * Ignored, a block-wise client transfers a single resource.
+	 */
+	@Override
+	public void setWorkloadMix(WorkloadMix mix) { }
+
+	public boolean isCheckLatency() {
+		return checkLatency;
+	}
+
+	public void setCheckLatency(boolean checkLatency) {
+		// allocate the histograms only if required, they take some kB per client
+		if (checkLatency && latencies == null) {
+			latencies = new LatencyHistogram();
+			blockLatencies = new LatencyHistogram();
+		}
+		this.checkLatency = checkLatency;
+	}
+
+	public void close() {
+		socket.close();
+	}
+}
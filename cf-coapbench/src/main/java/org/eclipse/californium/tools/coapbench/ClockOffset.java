@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+/**
+ * Estimates the offset between the {@link System#nanoTime()} clocks of two
+ * hosts in the manner of NTP. For each sample, the local host notes the time
+ * it sends a request and receives the reply, the remote host replies with its
+ * current time. Assuming symmetric delays, the remote time corresponds to the
+ * middle of the round trip. Of all samples, the one with the shortest round
+ * trip is the most accurate and is kept; its half round trip bounds the error
+ * of the estimate.
+ */
+public class ClockOffset {
+
+	/** Number of samples to take for an estimate. */
+	public static final int SAMPLES = 8;
+
+	private long offset; // remote - local
+	private long roundTrip = Long.MAX_VALUE;
+
+	/**
+	 * Adds a sample.
+	 * 
+	 * @param sent local time the request was sent
+	 * @param remote remote time of the reply
+	 * @param received local time the reply was received
+	 */
+	public void add(long sent, long remote, long received) {
+		long rtt = received - sent;
+		if (rtt >= 0 && rtt < roundTrip) {
+			roundTrip = rtt;
+			offset = remote - (sent + rtt / 2);
+		}
+	}
+
+	public void reset() {
+		offset = 0;
+		roundTrip = Long.MAX_VALUE;
+	}
+
+	public boolean isValid() {
+		return roundTrip != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Converts a local time into the remote clock.
+	 * 
+	 * @param local local {@link System#nanoTime()}
+	 * @return the corresponding remote {@link System#nanoTime()}
+	 */
+	public long toRemote(long local) {
+		return local + offset;
+	}
+
+	/**
+	 * @return offset of the remote clock in nanoseconds
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return shortest round trip in nanoseconds, twice the error bound
+	 */
+	public long getRoundTrip() {
+		return roundTrip;
+	}
+}
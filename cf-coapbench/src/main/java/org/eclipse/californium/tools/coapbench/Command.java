@@ -16,6 +16,7 @@
  ******************************************************************************/
 package org.eclipse.californium.tools.coapbench;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,9 +28,11 @@ import java.util.Map;
  * command = [at] [body]
  * at = @id
  * body = options* parameters*
- * options = -name value
+ * options = -name value | flag
  * parameter = value
  * </pre>
+ * An option followed by a value takes it as value, unless it is one of the
+ * flags passed to the constructor. The value after a flag is a parameter.
  */
 public class Command {
 
@@ -42,6 +45,17 @@ public class Command {
 	private List<String> parameters;
 	
 	public Command(String command) {
+		this(command, new String[0]);
+	}
+	
+	/**
+	 * Parses a command with options without value.
+	 * 
+	 * @param command command
+	 * @param flags options without value, e.g., "-start"
+	 */
+	public Command(String command, String... flags) {
+		List<String> flagList = Arrays.asList(flags);
 		this.complete = command;
 		this.parameters = new LinkedList<String>();
 		this.options = new HashMap<String, String>();
@@ -51,7 +65,7 @@ public class Command {
 		while (ptr < parts.length) {
 			String option = parts[ptr];
 			if (option.startsWith("-")) {
-				if (ptr+1 < parts.length && !parts[ptr+1].startsWith("-")) {
+				if (ptr+1 < parts.length && !parts[ptr+1].startsWith("-") && !flagList.contains(option)) {
 					options.put(option, parts[ptr+1]);
 					ptr += 2;
 					continue;
@@ -95,6 +109,12 @@ public class Command {
 		return Integer.parseInt(options.get(option));
 	}
 	
+	public long getLong(String option) {
+		if (!has(option))
+			throw new CommandException("Command has no option "+option);
+		return Long.parseLong(options.get(option));
+	}
+	
 	public String getString(String option) {
 		if (!has(option))
 			throw new CommandException("Command has no option "+option);
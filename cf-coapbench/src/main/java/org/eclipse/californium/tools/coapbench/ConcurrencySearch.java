@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+/**
+ * Searches the concurrency with the highest throughput, which still meets a
+ * p99 latency and a timeout rate ceiling, the capacity knee of the server.
+ * The search doubles the concurrency until a run exceeds a ceiling or the
+ * throughput stops growing, and then bisects the last interval.
+ * <ul>
+ * <li>If a ceiling is exceeded, the knee is the concurrency with the highest
+ * throughput within the ceilings. Close to the ceiling, that is not always
+ * the highest concurrency within them.</li>
+ * <li>If the throughput levels off, the knee is the lowest concurrency
+ * reaching the level, more clients only add latency.</li>
+ * </ul>
+ */
+public class ConcurrencySearch {
+
+	/** Minimum throughput increase of a doubled concurrency. */
+	public static final double GAIN = 0.05;
+	/** Bisect until the interval is below this fraction of the concurrency. */
+	public static final double RESOLUTION = 0.1;
+	public static final double DEFAULT_MAX_TIMEOUT_RATE = 0.01;
+
+	private final VirtualDeviceManager manager;
+	private final int min;
+	private final int max;
+	private final int time;
+	private double maxP99; // us, 0 for no ceiling
+	private double maxTimeoutRate = DEFAULT_MAX_TIMEOUT_RATE;
+	private int runs;
+
+	/**
+	 * Creates a search.
+	 * 
+	 * @param manager manager to run the clients
+	 * @param min concurrency to start with
+	 * @param max highest concurrency to try
+	 * @param time duration of each run in milliseconds
+	 */
+	public ConcurrencySearch(VirtualDeviceManager manager, int min, int max, int time) {
+		if (min < 1 || max < min)
+			throw new IllegalArgumentException("Concurrency range must be 1 <= min <= max, but is " + min + ":" + max);
+		this.manager = manager;
+		this.min = min;
+		this.max = max;
+		this.time = time;
+	}
+
+	/**
+	 * Sets the p99 latency ceiling. Requires the latencies to be measured.
+	 * 
+	 * @param maxP99 ceiling in microseconds, or 0 for no ceiling
+	 */
+	public void setMaxP99(double maxP99) {
+		this.maxP99 = maxP99;
+	}
+
+	/**
+	 * Sets the timeout rate ceiling.
+	 * 
+	 * @param maxTimeoutRate ratio of the timeouts to all requests, e.g., 0.01
+	 */
+	public void setMaxTimeoutRate(double maxTimeoutRate) {
+		this.maxTimeoutRate = maxTimeoutRate;
+	}
+
+	/**
+	 * Runs the search.
+	 * 
+	 * @return result of the knee, or {@code null}, if already the minimum
+	 *         concurrency exceeds a ceiling
+	 * @throws Exception if a run fails
+	 */
+	public RunResult search() throws Exception {
+		manager.format("Search concurrency %d to %d, ceilings: p99 %s, timeouts %.2f%%\n", min, max,
+				maxP99 > 0 ? manager.getLatencyUnit().format(maxP99) + " " + manager.getLatencyUnit().getSymbol() : "none",
+				maxTimeoutRate * 100);
+		RunResult before = null;
+		RunResult previous = null;
+		RunResult current = null;
+		int c = min;
+		while (true) {
+			current = measure(c);
+			if (!isWithin(current))
+				break;
+			if (previous != null && current.getThroughput() < previous.getThroughput() * (1 + GAIN)) {
+				// previous already reached the level, the knee is up to previous
+				double level = Math.max(previous.getThroughput(), current.getThroughput()) * (1 - GAIN);
+				if (before == null)
+					return report(previous, "throughput levels off");
+				return bisectLevel(before, previous, level);
+			}
+			if (c == max)
+				return report(current, "maximum concurrency reached");
+			before = previous;
+			previous = current;
+			c = (int) Math.min(2L * c, max);
+		}
+		if (previous == null)
+			return report(null, "minimum concurrency exceeds a ceiling");
+		return bisectCeiling(previous, current);
+	}
+
+	/*
+	 * Finds the run with the highest throughput within the ceilings between
+	 * lo (within) and hi (exceeds).
+	 */
+	private RunResult bisectCeiling(RunResult lo, RunResult hi) throws Exception {
+		RunResult best = lo;
+		while (!isResolved(lo, hi)) {
+			RunResult mid = measure(middle(lo, hi));
+			if (isWithin(mid)) {
+				lo = mid;
+				if (mid.getThroughput() > best.getThroughput())
+					best = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return report(best, "ceiling exceeded at concurrency " + hi.getDevices());
+	}
+
+	/*
+	 * Finds the lowest concurrency, which reaches the throughput level,
+	 * between lo (below the level) and hi.
+	 */
+	private RunResult bisectLevel(RunResult lo, RunResult hi, double level) throws Exception {
+		if (lo.getThroughput() >= level)
+			return report(lo, "throughput levels off");
+		while (!isResolved(lo, hi)) {
+			RunResult mid = measure(middle(lo, hi));
+			if (isWithin(mid) && mid.getThroughput() >= level)
+				hi = mid;
+			else
+				lo = mid;
+		}
+		return report(hi, "throughput levels off");
+	}
+
+	private RunResult measure(int concurrency) throws Exception {
+		if (runs++ > 0) // let the server settle
+			Thread.sleep(manager.getPause());
+		RunResult result = manager.run(concurrency, time);
+		if (result == null)
+			throw new IllegalStateException("Run with concurrency " + concurrency + " did not complete");
+		return result;
+	}
+
+	private boolean isWithin(RunResult result) {
+		long total = result.getCompleted() + result.getTimeouts();
+		if (total == 0 || result.getTimeouts() > total * maxTimeoutRate)
+			return false;
+		// without latencies, only the timeouts are checked
+		return maxP99 <= 0 || result.getLatencies().isEmpty() || result.getLatencies().getValueAtPercentile(99) <= maxP99;
+	}
+
+	private static boolean isResolved(RunResult lo, RunResult hi) {
+		return hi.getDevices() - lo.getDevices() <= Math.max(1, (int) (lo.getDevices() * RESOLUTION));
+	}
+
+	private static int middle(RunResult lo, RunResult hi) {
+		return (lo.getDevices() + hi.getDevices()) >>> 1;
+	}
+
+	private RunResult report(RunResult knee, String reason) throws Exception {
+		if (knee == null) {
+			manager.format("No knee found, %s\n", reason);
+		} else {
+			LatencyUnit unit = manager.getLatencyUnit();
+			manager.format("Knee at concurrency %d, throughput %.2f /s, timeouts %d%s, %s\n", knee.getDevices(),
+					knee.getThroughput(), knee.getTimeouts(),
+					knee.getLatencies().isEmpty() ? ""
+							: ", p99 " + unit.format(knee.getLatencies().getValueAtPercentile(99)) + " " + unit.getSymbol(),
+					reason);
+		}
+		return knee;
+	}
+}
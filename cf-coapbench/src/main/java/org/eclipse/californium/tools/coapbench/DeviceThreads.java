@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the threads for the virtual devices. If requested and supported by
+ * the Java runtime (Java 21 or newer), the threads are virtual threads.
+ * Otherwise, platform threads are used. The virtual threads are created by
+ * reflection, because coapbench is still compiled for older Java versions.
+ */
+public class DeviceThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method UNSTARTED;
+
+	static {
+		Method ofVirtual = null;
+		Method unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch (ReflectiveOperationException e) {
+			// virtual threads are not supported
+			ofVirtual = null;
+			unstarted = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		UNSTARTED = unstarted;
+	}
+
+	private DeviceThreads() {
+	}
+
+	/**
+	 * Checks, if the Java runtime supports virtual threads.
+	 * 
+	 * @return {@code true}, if virtual threads are supported
+	 */
+	public static boolean isVirtualSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates a new, not yet started thread.
+	 * 
+	 * @param runnable runnable to execute
+	 * @param name name of the thread
+	 * @param virtual {@code true} to create a virtual thread, if supported
+	 * @return the thread
+	 */
+	public static Thread newThread(Runnable runnable, String name, boolean virtual) {
+		if (virtual && OF_VIRTUAL != null) {
+			try {
+				Thread thread = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), runnable);
+				thread.setName(name);
+				return thread;
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Cannot create virtual thread", e);
+			}
+		}
+		return new Thread(runnable, name);
+	}
+}
@@ -0,0 +1,456 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+
+/**
+ * A virtual client that sends HTTP/1.1 GET requests, or POST requests with a
+ * {@link #setBody(byte[], String) body}, over a persistent (keep-alive)
+ * connection, e.g., to compare an HTTP-CoAP proxy with direct CoAP. The
+ * client uses the same schedule, window and latency recording as the CoAP
+ * {@link VirtualClient}, so both are measured with the same method.
+ * With a window larger than one, the client pipelines its requests; since
+ * HTTP/1.1 answers pipelined requests in order, a single thread sends and
+ * receives. A response timeout or a closed connection loses the outstanding
+ * requests and the client reconnects.
+ */
+public class HttpVirtualClient implements Runnable, VirtualClientDevice {
+
+	public static final int TIMEOUT = 10000;
+	private static final int BUFFER_SIZE = 8192;
+	private static final long RECONNECT_PAUSE = 100000000L; // 100 ms
+
+	private InetSocketAddress bindAddress;
+	private InetSocketAddress destination;
+	private URI uri;
+	private byte[] body;
+	private String contentType;
+	private byte[] request;
+
+	private Socket socket;
+	private InputStream in;
+	private OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private final StringBuilder line = new StringBuilder();
+
+	private volatile boolean runnable;
+	// written by a single thread each, read by the sampler
+	private volatile int counter;
+	private volatile int lost;
+
+	private LatencyHistogram latencies;
+	private boolean checkLatency;
+	private final ResponseStats stats = new ResponseStats();
+
+	private int window = 1;
+	// intended send times of the outstanding requests in order
+	private long[] sent = new long[1];
+	private int head;
+	private int inFlight;
+
+	private long start;
+	private long interval;
+	private long nextIntended;
+
+	public HttpVirtualClient(URI uri, InetSocketAddress addr) throws Exception {
+		this.bindAddress = addr;
+		this.runnable = true;
+		setURI(uri);
+	}
+
+	/**
+	 * Sets the local address of the next connection.
+	 */
+	@Override
+	public void bind(InetSocketAddress addr) {
+		this.bindAddress = addr;
+		disconnect();
+	}
+
+	@Override
+	public void setURI(URI uri) throws UnknownHostException {
+		if (!"http".equalsIgnoreCase(uri.getScheme()))
+			throw new IllegalArgumentException("Only http URIs are supported, but was " + uri);
+		this.uri = uri;
+		this.destination = new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort());
+		buildRequest();
+		disconnect();
+	}
+
+	/**
+	 * Sets a body to send with POST requests instead of GET requests.
+	 * 
+	 * @param body the body, or {@code null} for GET requests
+	 * @param contentType content type of the body
+	 */
+	public void setBody(byte[] body, String contentType) {
+		this.body = body;
+		this.contentType = contentType;
+		buildRequest();
+	}
+
+	/*
+	 * Serializes the request once, it is sent unchanged.
+	 */
+	private void buildRequest() {
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		if (uri.getRawQuery() != null)
+			path += "?" + uri.getRawQuery();
+		String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+		StringBuilder head = new StringBuilder(body == null ? "GET " : "POST ");
+		head.append(path).append(" HTTP/1.1\r\nHost: ").append(host);
+		head.append("\r\nUser-Agent: coapbench\r\nAccept: */*\r\n");
+		if (body != null) {
+			head.append("Content-Type: ").append(contentType).append("\r\n");
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		}
+		head.append("\r\n");
+		byte[] bytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+		if (body != null) {
+			byte[] message = new byte[bytes.length + body.length];
+			System.arraycopy(bytes, 0, message, 0, bytes.length);
+			System.arraycopy(body, 0, message, bytes.length, body.length);
+			bytes = message;
+		}
+		this.request = bytes;
+	}
+
+	@Override
+	public void run() {
+		if (latencies != null)
+			latencies.clear();
+		nextIntended = start;
+		while (runnable) {
+			try {
+				if (socket == null)
+					connect();
+				exchange();
+			} catch (SocketTimeoutException e) {
+				lost += inFlight;
+				disconnect();
+			} catch (IOException e) {
+				if (runnable) {
+					// refused or closed by the server, retry after a pause
+					lost += Math.max(1, inFlight);
+					disconnect();
+					LockSupport.parkNanos(RECONNECT_PAUSE);
+				}
+			}
+		}
+		disconnect();
+	}
+
+	private void connect() throws IOException {
+		Socket socket = new Socket();
+		if (bindAddress != null)
+			socket.bind(bindAddress);
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(TIMEOUT);
+		socket.connect(destination, TIMEOUT);
+		this.socket = socket;
+		this.in = socket.getInputStream();
+		this.out = socket.getOutputStream();
+		position = 0;
+		limit = 0;
+		head = 0;
+		inFlight = 0;
+	}
+
+	private void disconnect() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			socket = null;
+		}
+		inFlight = 0;
+	}
+
+	/*
+	 * Sends requests as long as the window has room for them, otherwise reads
+	 * the next response. With a schedule, the next request is only sent when
+	 * it is due.
+	 */
+	private void exchange() throws IOException {
+		while (runnable && socket != null) {
+			if (inFlight < window) {
+				long intended;
+				if (interval > 0) {
+					if (inFlight > 0 && nextIntended - System.nanoTime() > 0) {
+						readResponse();
+						continue;
+					}
+					awaitIntended();
+					intended = nextIntended;
+					nextIntended += interval;
+				} else {
+					intended = System.nanoTime();
+				}
+				sent[(head + inFlight) % sent.length] = intended;
+				++inFlight;
+				out.write(request);
+				out.flush();
+			} else {
+				readResponse();
+			}
+		}
+	}
+
+	/*
+	 * Waits until the intended time of the next request. If the client is
+	 * behind its schedule, it returns immediately.
+	 */
+	private void awaitIntended() {
+		long delay;
+		while (runnable && (delay = nextIntended - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+	}
+
+	/*
+	 * Parses a number of the response. A malformed number fails like a
+	 * malformed response, so the client counts the loss and reconnects
+	 * instead of dying.
+	 */
+	private static long parseNumber(String value, int radix, String name) throws IOException {
+		try {
+			long number = Long.parseLong(value, radix);
+			if (number >= 0)
+				return number;
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IOException("Malformed " + name + ": " + value);
+	}
+
+	private void readResponse() throws IOException {
+		String status = readLine();
+		if (status.length() < 12 || !status.startsWith("HTTP/1."))
+			throw new IOException("Malformed status line: " + status);
+		int code = (int) parseNumber(status.substring(9, 12), 10, "status code");
+		long length = -1;
+		boolean chunked = false;
+		boolean close = false;
+		String header;
+		while (!(header = readLine()).isEmpty()) {
+			int colon = header.indexOf(':');
+			if (colon < 0)
+				continue;
+			String name = header.substring(0, colon).trim();
+			String value = header.substring(colon + 1).trim();
+			if (name.equalsIgnoreCase("Content-Length"))
+				length = parseNumber(value, 10, "Content-Length");
+			else if (name.equalsIgnoreCase("Transfer-Encoding"))
+				chunked = value.equalsIgnoreCase("chunked");
+			else if (name.equalsIgnoreCase("Connection"))
+				close = value.equalsIgnoreCase("close");
+		}
+		if (chunked) {
+			long size;
+			while ((size = parseNumber(trimExtension(readLine()), 16, "chunk size")) > 0) {
+				skip(size);
+				readLine();
+			}
+			// trailers
+			while (!readLine().isEmpty())
+				;
+		} else if (length >= 0) {
+			skip(length);
+		} else if (code != 204 && code != 304 && code >= 200) {
+			// delimited by closing the connection
+			skipToEnd();
+			close = true;
+		}
+		if (code < 200) // informational, the final response follows
+			return;
+		long now = System.nanoTime();
+		long intended = sent[head];
+		head = (head + 1) % sent.length;
+		--inFlight;
+		if (code / 100 == 2) {
+			if (checkLatency)
+				latencies.recordNanos(now - intended);
+			counter++;
+		} else {
+			stats.recordStatus(code);
+		}
+		if (close) {
+			lost += inFlight;
+			disconnect();
+		}
+	}
+
+	private static String trimExtension(String size) {
+		int semicolon = size.indexOf(';');
+		return (semicolon < 0 ? size : size.substring(0, semicolon)).trim();
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer);
+		if (read < 0)
+			return false;
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private String readLine() throws IOException {
+		line.setLength(0);
+		while (true) {
+			if (position == limit && !fill())
+				throw new EOFException("Connection closed by server");
+			char c = (char) (buffer[position++] & 0xFF);
+			if (c == '\n') {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r')
+					line.setLength(length - 1);
+				return line.toString();
+			}
+			line.append(c);
+		}
+	}
+
+	private void skip(long length) throws IOException {
+		while (length > 0) {
+			if (position == limit && !fill())
+				throw new EOFException("Connection closed by server");
+			int n = (int) Math.min(length, limit - position);
+			position += n;
+			length -= n;
+		}
+	}
+
+	private void skipToEnd() throws IOException {
+		do {
+			position = limit;
+		} while (fill());
+	}
+
+	@Override
+	public boolean isRunning() {
+		return runnable;
+	}
+
+	@Override
+	public void stop() {
+		runnable = false;
+	}
+
+	@Override
+	public void reset() {
+		runnable = true;
+		counter = 0;
+		lost = 0;
+		stats.clear();
+	}
+
+	@Override
+	public void close() {
+		disconnect();
+	}
+
+	@Override
+	public int getCount() {
+		return counter;
+	}
+
+	@Override
+	public int getTimeouts() {
+		return lost;
+	}
+
+	@Override
+	public boolean isCheckLatency() {
+		return checkLatency;
+	}
+
+	@Override
+	public void setCheckLatency(boolean checkLatency) {
+		if (checkLatency && latencies == null)
+			latencies = new LatencyHistogram();
+		this.checkLatency = checkLatency;
+	}
+
+	@Override
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public void setSchedule(long start, long interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("Interval must not be negative, but is " + interval);
+		this.start = start;
+		this.interval = interval;
+	}
+
+	@Override
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of pipelined requests the client keeps in flight.
+	 * 
+	 * @param window number of outstanding requests
+	 */
+	@Override
+	public void setWindow(int window) {
+		if (window < 1 || window > RequestWindow.MAX_SIZE)
+			throw new IllegalArgumentException("Window must be in [1, " + RequestWindow.MAX_SIZE + "], but is " + window);
+		if (window == this.window)
+			return;
+		this.window = window;
+		this.sent = new long[window];
+	}
+
+	/**
+	 * Ignored, the validators check CoAP responses. Responses without a 2xx
+	 * status are always rejected.
+	 */
+	@Override
+	public void setResponseValidator(ResponseValidator validator) { }
+
+	@Override
+	public ResponseStats getResponseStats() {
+		return stats;
+	}
+
+	/**
+	 * Ignored, HTTP has no tokens.
+	 */
+	@Override
+	public void setTokenLength(int tokenLength) { }
+
+	/**
+	 * Ignored, an HTTP client sends the same request only.
+	 */
+	@Override
+	public void setWorkloadMix(WorkloadMix mix) { }
+}
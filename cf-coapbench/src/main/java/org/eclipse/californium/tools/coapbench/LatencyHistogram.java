@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded-memory latency histogram with logarithmic buckets, similar to the
+ * HdrHistogram. Values are recorded in microseconds. Values below
+ * {@link #SUB_BUCKETS} are recorded exactly, larger values with a relative
+ * error of less than 2/{@link #SUB_BUCKETS}, since each power of two above
+ * is split into {@link #SUB_BUCKETS}/2 buckets. Values above
+ * {@link #MAX_VALUE} are recorded as {@link #MAX_VALUE}.
+ * <p>
+ * The buckets of a power of two are only allocated with its first value. The
+ * latencies of a client usually span a few powers of two, so a histogram per
+ * client takes about 2 KB instead of the 6 KB of all buckets.
+ * <p>
+ * A histogram is intended to be recorded by one thread, usually the thread of
+ * a virtual device, while other threads may read or {@link #add(LatencyHistogram)
+ * merge} it concurrently without locking.
+ */
+public class LatencyHistogram implements LatencyRecorder {
+
+	/** Number of sub-buckets per power of two, defines the precision. */
+	public static final int SUB_BUCKETS = 64;
+
+	/** Largest recordable value, about 2 minutes in microseconds. */
+	public static final long MAX_VALUE = (1L << 27) - 1;
+
+	private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+	private static final int HALF = SUB_BUCKETS / 2;
+	private static final int LENGTH = indexOf(MAX_VALUE) + 1;
+	// one chunk per power of two, the exact values take the first two
+	private static final int CHUNKS = LENGTH / HALF;
+
+	private static final int[] PERCENTILES = { 50, 66, 75, 80, 90, 95, 98, 99, 100 };
+
+	private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<AtomicLongArray>(CHUNKS);
+
+	public LatencyHistogram() {
+	}
+
+	@Override
+	public void recordNanos(long nanos) {
+		record(nanos / 1000);
+	}
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param micros latency in microseconds
+	 */
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		else if (micros > MAX_VALUE)
+			micros = MAX_VALUE;
+		int index = indexOf(micros);
+		chunk(index / HALF).incrementAndGet(index % HALF);
+	}
+
+	/**
+	 * Adds the counts of the other histogram to this histogram.
+	 * 
+	 * @param other histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int c = 0; c < CHUNKS; c++) {
+			AtomicLongArray others = other.chunks.get(c);
+			if (others == null)
+				continue;
+			for (int i = 0; i < HALF; i++) {
+				long count = others.get(i);
+				if (count != 0)
+					chunk(c).addAndGet(i, count);
+			}
+		}
+	}
+
+	/**
+	 * Sets the counts of this histogram to the counts of the other histogram.
+	 * 
+	 * @param other histogram to copy
+	 */
+	public void set(LatencyHistogram other) {
+		clear();
+		add(other);
+	}
+
+	/**
+	 * Subtracts the counts of the other histogram from this histogram. Used to
+	 * get the latencies of an interval from two snapshots.
+	 * 
+	 * @param other earlier snapshot of this histogram
+	 */
+	public void subtract(LatencyHistogram other) {
+		for (int c = 0; c < CHUNKS; c++) {
+			AtomicLongArray counts = chunks.get(c);
+			AtomicLongArray others = other.chunks.get(c);
+			if (counts == null || others == null)
+				continue;
+			for (int i = 0; i < HALF; i++) {
+				long count = others.get(i);
+				if (count != 0)
+					counts.addAndGet(i, -Math.min(count, counts.get(i)));
+			}
+		}
+	}
+
+	/**
+	 * Encodes the non-empty buckets as comma separated index:count pairs, e.g.,
+	 * to send the histogram to the master.
+	 * 
+	 * @return encoded buckets, or an empty string, if the histogram is empty
+	 * @see #decode(String)
+	 */
+	public String encode() {
+		StringBuilder buckets = new StringBuilder();
+		for (int i = 0; i < LENGTH; i++) {
+			long count = get(i);
+			if (count != 0) {
+				if (buckets.length() > 0)
+					buckets.append(',');
+				buckets.append(i).append(':').append(count);
+			}
+		}
+		return buckets.toString();
+	}
+
+	/**
+	 * Decodes a histogram encoded by {@link #encode()}.
+	 * 
+	 * @param buckets encoded buckets
+	 * @return the histogram
+	 * @throws IllegalArgumentException if the buckets are malformed
+	 */
+	public static LatencyHistogram decode(String buckets) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		if (buckets.isEmpty())
+			return histogram;
+		for (String bucket : buckets.split(",")) {
+			int colon = bucket.indexOf(':');
+			if (colon < 0)
+				throw new IllegalArgumentException("Malformed bucket " + bucket);
+			int index = Integer.parseInt(bucket.substring(0, colon));
+			if (index < 0 || index >= LENGTH)
+				throw new IllegalArgumentException("Bucket index out of range " + bucket);
+			histogram.chunk(index / HALF).addAndGet(index % HALF, Long.parseLong(bucket.substring(colon + 1)));
+		}
+		return histogram;
+	}
+
+	/**
+	 * Resets the counts. The allocated buckets are kept for the next run.
+	 */
+	public void clear() {
+		for (int c = 0; c < CHUNKS; c++) {
+			AtomicLongArray counts = chunks.get(c);
+			if (counts != null)
+				for (int i = 0; i < HALF; i++)
+					counts.set(i, 0);
+		}
+	}
+
+	public long getTotalCount() {
+		long total = 0;
+		for (int i = 0; i < LENGTH; i++)
+			total += get(i);
+		return total;
+	}
+
+	public boolean isEmpty() {
+		return getTotalCount() == 0;
+	}
+
+	/**
+	 * Gets the value at the percentile.
+	 * 
+	 * @param percentile percentile in [0, 100]
+	 * @return the highest value, which is equivalent to the value at the
+	 *         percentile, in microseconds, or 0, if the histogram is empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = getTotalCount();
+		if (total == 0)
+			return 0;
+		// same rank as the former sorted array's [(int) (length * p / 100)]
+		long rank = Math.min((long) (total * percentile / 100.0), total - 1) + 1;
+		long sum = 0;
+		int last = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			long count = get(i);
+			if (count != 0) {
+				sum += count;
+				last = i;
+				if (sum >= rank)
+					return highestEquivalentValue(i);
+			}
+		}
+		return highestEquivalentValue(last);
+	}
+
+	public long getMaxValue() {
+		for (int i = LENGTH - 1; i >= 0; i--)
+			if (get(i) != 0)
+				return highestEquivalentValue(i);
+		return 0;
+	}
+
+	/**
+	 * Gets the mean, based on the middle of the buckets.
+	 * 
+	 * @return mean in microseconds
+	 */
+	public double getMean() {
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			long count = get(i);
+			if (count != 0) {
+				total += count;
+				sum += count * medianEquivalentValue(i);
+			}
+		}
+		return total == 0 ? 0 : sum / total;
+	}
+
+	/**
+	 * Gets the standard deviation, based on the middle of the buckets.
+	 * 
+	 * @return standard deviation in microseconds
+	 */
+	public double getStdDeviation() {
+		double mean = getMean();
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			long count = get(i);
+			if (count != 0) {
+				double d = medianEquivalentValue(i) - mean;
+				total += count;
+				sum += count * d * d;
+			}
+		}
+		return total == 0 ? 0 : Math.sqrt(sum / total);
+	}
+
+	/**
+	 * Formats the 50, 66, 75, 80, 90, 95, 98, 99 and 100 percentiles and the
+	 * standard deviation in milliseconds, separated by commas.
+	 * 
+	 * @return formatted percentiles
+	 */
+	public String formatPercentiles() {
+		return formatPercentiles(LatencyUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Formats the 50, 66, 75, 80, 90, 95, 98, 99 and 100 percentiles and the
+	 * standard deviation in the unit, separated by commas.
+	 * 
+	 * @param unit unit of the values
+	 * @return formatted percentiles
+	 */
+	public String formatPercentiles(LatencyUnit unit) {
+		StringBuilder line = new StringBuilder();
+		for (int p : PERCENTILES)
+			line.append(unit.format(getValueAtPercentile(p))).append(", ");
+		line.append(unit.format(getStdDeviation()));
+		return line.toString();
+	}
+
+	private long get(int index) {
+		AtomicLongArray counts = chunks.get(index / HALF);
+		return counts == null ? 0 : counts.get(index % HALF);
+	}
+
+	/*
+	 * Gets the buckets of a power of two and allocates them with the first
+	 * value. Concurrent merges may allocate them as well.
+	 */
+	private AtomicLongArray chunk(int c) {
+		AtomicLongArray counts = chunks.get(c);
+		if (counts == null) {
+			counts = new AtomicLongArray(HALF);
+			if (!chunks.compareAndSet(c, null, counts))
+				counts = chunks.get(c);
+		}
+		return counts;
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	private static long lowestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / HALF - 1;
+		return (long) (index - shift * HALF) << shift;
+	}
+
+	private static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / HALF - 1;
+		return lowestEquivalentValue(index) + (1L << shift) - 1;
+	}
+
+	private static double medianEquivalentValue(int index) {
+		return (lowestEquivalentValue(index) + highestEquivalentValue(index)) / 2.0;
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+/**
+ * Records latencies. All virtual devices measure their latencies with
+ * {@link System#nanoTime()} and pass the raw nanoseconds, the recorder takes
+ * care of the conversion into its resolution. That keeps the latencies of
+ * clients and servers comparable.
+ */
+public interface LatencyRecorder {
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param nanos latency in nanoseconds
+	 */
+	void recordNanos(long nanos);
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.Locale;
+
+/**
+ * Unit in which latencies are reported. The {@link LatencyHistogram} records
+ * microseconds, the unit converts them for the log.
+ */
+public enum LatencyUnit {
+
+	MICROSECONDS("us", 1, "%.0f"), MILLISECONDS("ms", 1000, "%.3f");
+
+	private final String symbol;
+	private final double micros;
+	private final String format;
+
+	private LatencyUnit(String symbol, double micros, String format) {
+		this.symbol = symbol;
+		this.micros = micros;
+		this.format = format;
+	}
+
+	/**
+	 * Gets the symbol of the unit for the log header.
+	 * 
+	 * @return symbol, e.g. "ms"
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * Converts microseconds into this unit.
+	 * 
+	 * @param micros value in microseconds
+	 * @return value in this unit
+	 */
+	public double fromMicros(double micros) {
+		return micros / this.micros;
+	}
+
+	/**
+	 * Converts a value in this unit into microseconds.
+	 * 
+	 * @param value value in this unit
+	 * @return value in microseconds
+	 */
+	public double toMicros(double value) {
+		return value * micros;
+	}
+
+	/**
+	 * Formats microseconds in this unit.
+	 * 
+	 * @param micros value in microseconds
+	 * @return formatted value without symbol
+	 */
+	public String format(double micros) {
+		return String.format(Locale.ROOT, format, fromMicros(micros));
+	}
+
+	/**
+	 * Gets the unit for the symbol.
+	 * 
+	 * @param symbol symbol of the unit, "us" or "ms"
+	 * @return the unit
+	 * @throws IllegalArgumentException if the symbol is unknown
+	 */
+	public static LatencyUnit fromSymbol(String symbol) {
+		for (LatencyUnit unit : values())
+			if (unit.symbol.equals(symbol))
+				return unit;
+		throw new IllegalArgumentException("Unknown latency unit " + symbol + ", use us or ms");
+	}
+}
@@ -23,6 +23,9 @@ import java.io.IOException;
 
 /**
  * Log file. Works like System.out.println() but stores all Strings into a file.
+ * The lines are buffered and only written when the buffer is full or the log
+ * is {@link #flush() flushed}, e.g., at the end of a run, so logging the
+ * samples of a run does not wait for the disk. Errors are flushed at once.
  */
 public class LogFile {
 
@@ -31,11 +34,11 @@ public class LogFile {
 	
 	public LogFile(String name) throws Exception {
 		File file = createLogFile(name);
-		out = new BufferedWriter(new FileWriter(file));
+		out = new BufferedWriter(new FileWriter(file), 64 * 1024);
 		System.out.println("Created log file "+file.getAbsolutePath());
 	}
 	
-	public void println(String line) {
+	public synchronized void println(String line) {
 		try {
 			while (line.startsWith("\n")) {
 //				if (verbose)
@@ -46,25 +49,23 @@ public class LogFile {
 			if (verbose)
 				System.out.println(line);
 			out.write(line+"\r\n");
-			out.flush();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	public void format(String str, Object... args){
+	public synchronized void format(String str, Object... args){
 		try {
 			String line = String.format(str, args);
 //			if (verbose)
 				System.out.print(line);
 			out.write(line.replace("\n", "\r\n"));
-			out.flush();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	public void errln(String line) {
+	public synchronized void errln(String line) {
 		try {
 //			if (verbose)
 				System.err.println(line);
@@ -75,6 +76,22 @@ public class LogFile {
 		}
 	}
 	
+	public synchronized void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public synchronized void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	private File createLogFile(String name) throws Exception {
 //		String date = new SimpleDateFormat("yyyy_MM_dd_HH_mm_ss").format(new Date());
 //		name = name + "_" + date;
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to non-negative int values. It
+ * neither boxes the keys and values nor allocates entries, so it can hold
+ * thousands of relations without garbage. The map is not thread-safe.
+ */
+final class LongIntHashMap {
+
+	public static final int NONE = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	public LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(values, NONE);
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * 
+	 * @param key key
+	 * @return value, or {@link #NONE}, if the map does not contain the key
+	 */
+	public int get(long key) {
+		for (int i = index(key);; i = (i + 1) & mask) {
+			if (values[i] == NONE)
+				return NONE;
+			if (keys[i] == key)
+				return values[i];
+		}
+	}
+
+	/**
+	 * Puts a value.
+	 * 
+	 * @param key key
+	 * @param value non-negative value
+	 * @return previous value, or {@link #NONE}
+	 */
+	public int put(long key, int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Value must not be negative, but is " + value);
+		int i = index(key);
+		for (; values[i] != NONE; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				int previous = values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length)
+			resize();
+		return NONE;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(values, NONE);
+		size = 0;
+	}
+
+	private int index(long key) {
+		// spread the bits, the keys of consecutive ports only differ in few bits
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		mask = keys.length - 1;
+		Arrays.fill(values, NONE);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldValues[i] != NONE)
+				put(oldKeys[i], oldValues[i]);
+	}
+}
@@ -16,88 +16,113 @@
  ******************************************************************************/
 package org.eclipse.californium.tools.coapbench;
 
-
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * A meter is used to measure throughput (requests per second). Call
- * {@link #requested()} after sending a request and {@link #responded()} after
- * receiving a response.
+ * A meter is used to measure throughput (requests per second) and to limit the
+ * number of requests in flight. Call {@link #requested()} before sending a
+ * request, {@link #dropped()} if it could not be sent, and
+ * {@link #responded()} after receiving a response.
+ * <p>
+ * The meter is a lock-free credit based flow controller. It starts with a
+ * budget of occupation credits. Each request takes a credit before it is sent
+ * and each response returns one, so at most occupation requests are in
+ * flight. A sender without credit waits in {@link #pause()}, first
+ * spinning, then yielding and finally parking for short periods. The meter
+ * does not print anything; its counters are read by a background reporter.
+ * <p>
+ * Since UDP may lose responses, credits may get lost. If a sender waits
+ * without any response arriving for {@link #STALL_TIMEOUT} nanoseconds, the
+ * outstanding requests are considered lost and the budget is refilled.
  */
 public class Meter {
 
-	private int max; // The maximum amount of requests the clients send.
-	private int occupation; // The amount of request that the clients send before pausing
-	private int clientCount; // The amount of clients there are
+	public static final long STALL_TIMEOUT = 1000000000L; // 1 s
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 10;
+	private static final long PARK_NANOS = 50000; // 50 us
+
+	private final int occupation; // The amount of request that the clients send before pausing
 	
-	// for requests (pause when occupied)
-	private AtomicInteger requestCounter = new AtomicInteger();
+	// in-flight budget
+	private final AtomicLong credits;
 	
 	// for responses
-	private AtomicInteger counter = new AtomicInteger();
-	private long last_timestamp;
-	private float avg[] = new float[10];
-	private int avgp = 0;
-	
-	private BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+	private final AtomicLong counter = new AtomicLong();
 	
 	public Meter(int occupation) {
-		this(occupation, 1);
-	}
-	
-	public Meter(int occupation, int clientCount) {
-		this.clientCount = clientCount;
+		if (occupation < 1)
+			throw new IllegalArgumentException("Occupation must be at least 1");
 		this.occupation = occupation;
-		this.last_timestamp = System.nanoTime();
-		this.max = occupation;
+		this.credits = new AtomicLong(occupation);
 	}
 	
 	public void responded() {
-		int d = counter.incrementAndGet();
-		if (d % occupation == 0) {
-			resume();
-			long now = System.nanoTime();
-			float dt = (now - last_timestamp) / 1000000f;
-			float through = occupation * 1000L / dt;
-			System.out.format("received %8d. In %4d  ms, %6d per sec, 10avg: %6d\n",
-					d, (int) dt, (int) through, (int) nextAvg(through));
-			last_timestamp = now;
-		}
+		counter.incrementAndGet();
+		credits.incrementAndGet();
 	}
 	
+	/**
+	 * Takes a credit for a request. Waits, if there is no credit left.
+	 */
 	public void requested() {
-		int c = requestCounter.incrementAndGet();
-		if (c >= max) {
+		while (credits.decrementAndGet() < 0) {
+			credits.incrementAndGet();
 			pause();
 		}
 	}
 	
+	/**
+	 * Returns the credit of a request, which could not be sent.
+	 */
+	public void dropped() {
+		credits.incrementAndGet();
+	}
+	
+	/**
+	 * Waits until the budget allows another request.
+	 */
 	public void pause() {
-		try {
-			queue.take();
-		} catch (Exception e) {
-			e.printStackTrace();
+		int spins = 0;
+		long since = 0;
+		long seen = 0;
+		while (credits.get() <= 0) {
+			if (spins < SPINS) {
+				spins++;
+			} else if (spins < SPINS + YIELDS) {
+				spins++;
+				Thread.yield();
+			} else {
+				long now = System.nanoTime();
+				long responded = counter.get();
+				if (since == 0 || responded != seen) {
+					since = now;
+					seen = responded;
+				} else if (now - since >= STALL_TIMEOUT) {
+					// no response for too long, consider the outstanding lost
+					credits.set(occupation);
+					return;
+				}
+				LockSupport.parkNanos(PARK_NANOS);
+			}
 		}
 	}
 	
+	/**
+	 * Grants another occupation credits, e.g., to release waiting senders when
+	 * stopping.
+	 */
 	public void resume() {
-		// do not overfill it
-		max += occupation;
-		if (queue.size() <= 2 * clientCount) {
-			for (int i=0;i<clientCount;i++) {
-				queue.add("release");
-			}
-		}
+		credits.addAndGet(occupation);
 	}
-
-	private float nextAvg(float val) {
-		avg[avgp++ % avg.length] = val;
-		float sum = 0;
-		for (float f : avg)
-			sum += f;
-		return sum / avg.length;
+	
+	public long getResponded() {
+		return counter.get();
 	}
 	
+	public int getOccupation() {
+		return occupation;
+	}
 }
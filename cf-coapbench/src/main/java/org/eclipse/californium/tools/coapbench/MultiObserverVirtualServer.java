@@ -0,0 +1,578 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+
+/**
+ * A virtual server with many observe relations on a single socket. Like the
+ * {@link VirtualServer}, it announces its resources to the observer with a POST
+ * each, i.e., coap://host:port/benchmark/i, and waits for the observer to
+ * register. Then a small pool of sender threads pushes the notifications, each
+ * thread to its share of the relations. Without a rate, a sender notifies its
+ * relations round-robin as fast as possible, otherwise each relation at the
+ * given rate. With confirmable notifications, a relation waits for the ACK of
+ * its last notification, which the calling thread receives.
+ * <p>
+ * The relations are kept in arrays indexed by the relation number. The
+ * registrations are found by a hash of peer and token, the ACKs by their MID,
+ * both without allocation. Since the MIDs of all relations wrap after 65536
+ * notifications, an ACK is only accepted, if the relation's outstanding
+ * notification has its MID. The notifications are built from raw bytes with an
+ * Observe option of three bytes, so the MID and the sequence number are patched
+ * in place.
+ */
+public class MultiObserverVirtualServer implements Runnable, VirtualDevice {
+
+	public static final int TIMEOUT = VirtualServer.TIMEOUT;
+	public static final int DEFAULT_SENDERS = 1;
+
+	private static final long TIMEOUT_NANOS = TIMEOUT * 1000000L;
+	private static final int OPTION_OBSERVE = 6;
+	private static final int RECEIVE_BUFFER_SIZE = 1500;
+	private static final int REGISTRATION_TIMEOUT = 10000; // ms
+	private static final int POST_RETRANSMISSIONS = 10;
+	// senders park shortly, if all their relations wait for an ACK
+	private static final long IDLE_NANOS = 10000;
+
+	private final UdpDataSerializer serializer = new UdpDataSerializer();
+
+	private DatagramSocket socket;
+	private DatagramPacket pRecv;
+	private DatagramPacket pSend;
+
+	private InetSocketAddress bindAddress;
+	private URI postURI;
+
+	private volatile boolean runnable;
+	private boolean confirmable;
+	private boolean checkLatency = false;
+	private LatencyHistogram latencies;
+
+	// written by several threads, read by the sampler
+	private final AtomicInteger counter = new AtomicInteger();
+	private final AtomicInteger lost = new AtomicInteger();
+
+	private final AtomicInteger mid = new AtomicInteger();
+	private CyclicBarrier barrier;
+	private int senders = DEFAULT_SENDERS;
+	private long interval; // per relation in nanoseconds, 0 for round-robin
+
+	// relations
+	private final int relationCount;
+	private int registered;
+	private final boolean[] announced;
+	private final InetAddress[] addresses;
+	private final int[] ports;
+	private final byte[][] notifications;
+	private final int[] sequenceNumbers;
+	// 1 while active, cleared by the receiver on an RST
+	private final AtomicIntegerArray active;
+	private final long[] nextDue;
+	// send time of the outstanding CON notification, 0 if none
+	private final AtomicLongArray sentAt;
+	// MID of the outstanding CON notification, published by sentAt
+	private final int[] sentMID;
+	private final LongIntHashMap relationsByKey;
+	private final int[] relationsByMID = new int[1 << 16];
+
+	public MultiObserverVirtualServer(URI uri, InetSocketAddress addr, boolean confirmable, CyclicBarrier barrier, int relationCount) throws Exception {
+		if (relationCount < 1 || relationCount > 1 << 15)
+			throw new IllegalArgumentException("Number of relations must be in [1, " + (1 << 15) + "], but is " + relationCount);
+		this.pRecv = new DatagramPacket(new byte[RECEIVE_BUFFER_SIZE], RECEIVE_BUFFER_SIZE);
+		this.pSend = new DatagramPacket(new byte[0], 0);
+		this.runnable = true;
+		this.bindAddress = addr;
+		this.postURI = uri;
+		this.confirmable = confirmable;
+		this.barrier = barrier;
+		this.relationCount = relationCount;
+		this.announced = new boolean[relationCount];
+		this.addresses = new InetAddress[relationCount];
+		this.ports = new int[relationCount];
+		this.notifications = new byte[relationCount][];
+		this.sequenceNumbers = new int[relationCount];
+		this.active = new AtomicIntegerArray(relationCount);
+		this.nextDue = new long[relationCount];
+		this.sentAt = new AtomicLongArray(relationCount);
+		this.sentMID = new int[relationCount];
+		this.relationsByKey = new LongIntHashMap(relationCount);
+		bind(addr);
+	}
+
+	public void bind(InetSocketAddress addr) throws Exception {
+		if (this.socket == null || this.socket.isClosed()) {
+			if (addr == null)
+				this.socket = new DatagramSocket();
+			else
+				this.socket = new DatagramSocket(addr);
+		}
+	}
+
+	@Override
+	public void run() {
+		Thread[] threads = new Thread[0];
+		try {
+			bind(bindAddress);
+			register();
+			if (!runnable || registered == 0)
+				return;
+			if (registered < relationCount)
+				System.err.println("Virtual server (:" + socket.getLocalPort() + ") has only " + registered + " of " + relationCount + " relations.");
+
+			socket.setSoTimeout(1000);
+			if (barrier != null)
+				barrier.await();
+
+			long begin = System.nanoTime();
+			for (int r = 0; r < registered; r++)
+				nextDue[r] = begin + (long) ((double) interval * r / registered);
+			threads = new Thread[Math.min(senders, registered)];
+			for (int i = 0; i < threads.length; i++) {
+				final int first = i;
+				final int step = threads.length;
+				threads[i] = new Thread("MultiObserverVirtualServer-Sender-" + i) {
+					public void run() {
+						notifyObservers(first, step);
+					} };
+				threads[i].start();
+			}
+			if (confirmable)
+				receiveAcks();
+			for (Thread thread : threads)
+				thread.join();
+			threads = new Thread[0];
+
+			cancelRelations();
+
+		} catch (BrokenBarrierException bbe) {
+			cancelRelations();
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			stop();
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			close();
+		}
+	}
+
+	/*
+	 * Announces all resources with a POST each and registers the observers.
+	 * Unanswered POSTs are sent again every second.
+	 */
+	private void register() throws IOException {
+		byte[][] posts = new byte[relationCount][];
+		String host = bindAddress != null ? bindAddress.getHostString() : "127.0.0.1";
+		for (int i = 0; i < relationCount; i++) {
+			Request req = new Request(Code.POST);
+			req.setPayload("coap://" + host + ":" + socket.getLocalPort() + "/benchmark/" + i);
+			// set manually as no stack is used
+			req.setToken(new byte[0]);
+			req.setMID(i);
+			req.setType(Type.CON);
+			req.setURI(postURI);
+			posts[i] = serializer.serializeRequest(req).getBytes();
+		}
+		mid.set(relationCount);
+		DatagramPacket post = new DatagramPacket(new byte[0], 0,
+				InetAddress.getByName(postURI.getHost()), postURI.getPort() != -1 ? postURI.getPort() : 5683);
+
+		socket.setSoTimeout(100);
+		long deadline = System.currentTimeMillis() + REGISTRATION_TIMEOUT;
+		long nextPost = 0;
+		int retransmissions = 0;
+		int answered = 0;
+		while (runnable && registered < relationCount && System.currentTimeMillis() < deadline) {
+			long now = System.currentTimeMillis();
+			if (answered < relationCount && now >= nextPost && retransmissions++ < POST_RETRANSMISSIONS) {
+				for (int i = 0; i < relationCount; i++) {
+					if (!announced[i]) {
+						post.setData(posts[i]);
+						socket.send(post);
+					}
+				}
+				nextPost = now + 1000;
+			}
+			try {
+				pRecv.setLength(RECEIVE_BUFFER_SIZE);
+				socket.receive(pRecv);
+			} catch (SocketTimeoutException e) {
+				continue;
+			} catch (SocketException e) {
+				e.printStackTrace();
+				runnable = false;
+				break;
+			}
+			byte[] msg = pRecv.getData();
+			int length = pRecv.getLength();
+			if (length < 4)
+				continue;
+			int type = (msg[0] & 0x30) >> 4;
+			int code = RawCoap.getCode(msg);
+			if (code == Code.GET.value) {
+				long observe = RawCoap.findOption(msg, length, OPTION_OBSERVE);
+				if (observe >= 0 && RawCoap.getUint(msg, RawCoap.offset(observe), RawCoap.length(observe)) == 0) {
+					registerObserver(msg, type);
+					// the observer received the POST response
+					deadline = System.currentTimeMillis() + REGISTRATION_TIMEOUT;
+				}
+			} else if ((code >>> 5) == 2 || type == Type.ACK.value) {
+				int postMID = RawCoap.getMID(msg);
+				if (postMID < relationCount && !announced[postMID]) {
+					announced[postMID] = true;
+					answered++;
+				}
+				if (type == Type.CON.value)
+					sendEmptyAck(msg);
+			}
+		}
+		if (registered == 0 && runnable)
+			System.err.println("Virtual server (:" + socket.getLocalPort() + ") timed out waiting for observers.");
+	}
+
+	/*
+	 * Registers the observer of a GET with Observe 0 and answers it with the
+	 * first notification. A retransmitted registration gets the same relation.
+	 */
+	private void registerObserver(byte[] req, int type) throws IOException {
+		int tokenLength = req[0] & 0x0F;
+		InetAddress address = pRecv.getAddress();
+		int port = pRecv.getPort();
+		long key = key(address, port, req, tokenLength);
+		int relation = relationsByKey.get(key);
+		if (relation == LongIntHashMap.NONE) {
+			if (registered == relationCount)
+				return;
+			relation = registered++;
+			relationsByKey.put(key, relation);
+			addresses[relation] = address;
+			ports[relation] = port;
+			notifications[relation] = createNotification(req, tokenLength, confirmable ? Type.CON : Type.NON);
+			active.set(relation, 1);
+		}
+		byte[] response = createNotification(req, tokenLength, type == Type.CON.value ? Type.ACK : Type.NON);
+		if (type == Type.CON.value) {
+			response[2] = req[2];
+			response[3] = req[3];
+		} else {
+			RawCoap.setMID(response, mid.getAndIncrement() & 0xFFFF);
+		}
+		pSend.setData(response);
+		pSend.setAddress(address);
+		pSend.setPort(port);
+		socket.send(pSend);
+	}
+
+	private void sendEmptyAck(byte[] msg) throws IOException {
+		byte[] ack = new byte[] { (byte) (0x40 | Type.ACK.value << 4), 0, msg[2], msg[3] };
+		pSend.setData(ack);
+		pSend.setAddress(pRecv.getAddress());
+		pSend.setPort(pRecv.getPort());
+		socket.send(pSend);
+	}
+
+	/*
+	 * Builds a 2.05 notification with the token of the request and an Observe
+	 * option of three bytes. The MID is set when sending.
+	 */
+	private static byte[] createNotification(byte[] req, int tokenLength, Type type) {
+		byte[] notification = new byte[4 + tokenLength + 4];
+		notification[0] = (byte) (0x40 | type.value << 4 | tokenLength);
+		notification[1] = (byte) ResponseCode.CONTENT.value;
+		System.arraycopy(req, 4, notification, 4, tokenLength);
+		notification[4 + tokenLength] = (byte) (OPTION_OBSERVE << 4 | 3);
+		return notification;
+	}
+
+	/*
+	 * Hashes peer and token into a key. The relations are only told apart by
+	 * the key, a collision of two 64 bit hashes is not expected.
+	 */
+	private static long key(InetAddress address, int port, byte[] req, int tokenLength) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : address.getAddress())
+			hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+		hash = (hash ^ port) * 0x100000001b3L;
+		for (int i = 4; i < 4 + tokenLength; i++)
+			hash = (hash ^ (req[i] & 0xFF)) * 0x100000001b3L;
+		return hash;
+	}
+
+	/*
+	 * Sends the notifications of the relations first, first + step, ... With
+	 * CON, a relation waits for the ACK of its last notification or the
+	 * timeout.
+	 */
+	private void notifyObservers(int first, int step) {
+		DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+		try {
+			while (runnable) {
+				long now = System.nanoTime();
+				long wait = Long.MAX_VALUE;
+				boolean sent = false;
+				for (int r = first; r < registered && runnable; r += step) {
+					if (active.get(r) == 0)
+						continue;
+					if (interval > 0) {
+						long due = nextDue[r] - now;
+						if (due > 0) {
+							wait = Math.min(wait, due);
+							continue;
+						}
+					}
+					if (confirmable) {
+						long outstanding = sentAt.get(r);
+						if (outstanding != 0) {
+							if (now - outstanding < TIMEOUT_NANOS)
+								continue;
+							if (sentAt.compareAndSet(r, outstanding, 0))
+								lost.incrementAndGet();
+						}
+					}
+					if (interval > 0)
+						nextDue[r] += interval;
+					notifyObserver(r, packet);
+					sent = true;
+				}
+				if (wait != Long.MAX_VALUE && !sent)
+					LockSupport.parkNanos(wait);
+				else if (!sent)
+					LockSupport.parkNanos(IDLE_NANOS);
+			}
+		} catch (IOException e) {
+			if (runnable)
+				e.printStackTrace();
+		}
+	}
+
+	private void notifyObserver(int relation, DatagramPacket packet) throws IOException {
+		byte[] notification = notifications[relation];
+		int next = mid.getAndIncrement() & 0xFFFF;
+		RawCoap.setMID(notification, next);
+		int sequenceNumber = ++sequenceNumbers[relation] & 0xFFFFFF;
+		RawCoap.setUint(notification, notification.length - 3, 3, sequenceNumber);
+		packet.setData(notification);
+		packet.setAddress(addresses[relation]);
+		packet.setPort(ports[relation]);
+		if (confirmable) {
+			relationsByMID[next] = relation;
+			sentMID[relation] = next;
+			// take the timestamp just before sending to not include the serialization
+			sentAt.set(relation, System.nanoTime());
+			socket.send(packet);
+		} else {
+			socket.send(packet);
+			counter.incrementAndGet();
+		}
+	}
+
+	/*
+	 * Receives the ACKs of the CON notifications. Late ACKs of already timed
+	 * out notifications are skipped. An RST cancels the relation and is
+	 * counted as lost.
+	 */
+	private void receiveAcks() throws IOException {
+		DatagramPacket packet = new DatagramPacket(new byte[RECEIVE_BUFFER_SIZE], RECEIVE_BUFFER_SIZE);
+		while (runnable) {
+			try {
+				packet.setLength(RECEIVE_BUFFER_SIZE);
+				socket.receive(packet);
+			} catch (SocketTimeoutException e) {
+				continue;
+			} catch (SocketException e) {
+				if (runnable)
+					e.printStackTrace();
+				return;
+			}
+			long now = System.nanoTime();
+			byte[] ack = packet.getData();
+			if (packet.getLength() < 4)
+				continue;
+			int type = (ack[0] & 0x30) >> 4;
+			if (type != Type.ACK.value && type != Type.RST.value)
+				continue;
+			int ackMID = RawCoap.getMID(ack);
+			int relation = relationsByMID[ackMID];
+			long sent = sentAt.get(relation);
+			// the MID may have been reused by another relation's notification
+			if (sent == 0 || sentMID[relation] != ackMID || !sentAt.compareAndSet(relation, sent, 0))
+				continue;
+			if (type == Type.RST.value) {
+				active.set(relation, 0);
+				lost.incrementAndGet();
+				continue;
+			}
+			if (checkLatency)
+				latencies.recordNanos(now - sent);
+			counter.incrementAndGet();
+		}
+	}
+
+	/*
+	 * Sends a 4.04 to each observer to end the relations.
+	 */
+	private void cancelRelations() {
+		for (int r = 0; r < registered; r++) {
+			if (active.get(r) == 0)
+				continue;
+			byte[] notification = notifications[r];
+			byte[] cancel = Arrays.copyOf(notification, 4 + (notification[0] & 0x0F));
+			cancel[1] = (byte) ResponseCode.NOT_FOUND.value;
+			RawCoap.setMID(cancel, mid.getAndIncrement() & 0xFFFF);
+			pSend.setData(cancel);
+			pSend.setAddress(addresses[r]);
+			pSend.setPort(ports[r]);
+			try {
+				socket.send(pSend);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	public int getRelationCount() {
+		return relationCount;
+	}
+
+	public int getRegistered() {
+		return registered;
+	}
+
+	public int getSenders() {
+		return senders;
+	}
+
+	/**
+	 * Sets the number of threads sending the notifications.
+	 * 
+	 * @param senders number of sender threads
+	 */
+	public void setSenders(int senders) {
+		if (senders < 1)
+			throw new IllegalArgumentException("Number of senders must be at least 1, but is " + senders);
+		this.senders = senders;
+	}
+
+	/**
+	 * Sets the rate of notifications per relation.
+	 * 
+	 * @param rate notifications per second and relation, or 0 to notify the
+	 *            relations round-robin as fast as possible
+	 */
+	public void setRelationRate(int rate) {
+		if (rate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + rate);
+		this.interval = rate == 0 ? 0 : 1000000000L / rate;
+	}
+
+	@Override
+	public int getCount() {
+		return counter.get();
+	}
+
+	@Override
+	public int getTimeouts() {
+		return lost.get();
+	}
+
+	@Override
+	public boolean isCheckLatency() {
+		return checkLatency;
+	}
+
+	@Override
+	public void setCheckLatency(boolean checkLatency) {
+		// allocate the histogram only if required
+		if (checkLatency && latencies == null)
+			latencies = new LatencyHistogram();
+		this.checkLatency = checkLatency;
+	}
+
+	@Override
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public void setURI(URI uri) throws UnknownHostException {
+		postURI = uri;
+	}
+
+	@Override
+	public void reset() {
+		lost.set(0);
+		counter.set(0);
+		if (latencies != null)
+			latencies.clear();
+		runnable = true;
+		registered = 0;
+		relationsByKey.clear();
+		Arrays.fill(announced, false);
+		Arrays.fill(sequenceNumbers, 0);
+		for (int r = 0; r < relationCount; r++) {
+			active.set(r, 0);
+			sentAt.set(r, 0);
+		}
+	}
+
+	public void setBarrier(CyclicBarrier barrier) {
+		this.barrier = barrier;
+	}
+
+	public void setConfirmable(boolean confirmable) {
+		this.confirmable = confirmable;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return runnable;
+	}
+
+	public void stop() {
+		runnable = false;
+	}
+
+	public void close() {
+		if (socket != null && !socket.isClosed())
+			socket.close();
+	}
+}
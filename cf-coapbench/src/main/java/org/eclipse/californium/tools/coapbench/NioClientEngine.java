@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The NIO client engine drives many {@link NioVirtualClient}s with a small
+ * number of selector loops (by default one per core) instead of one thread per
+ * client. Each virtual client keeps its own channel and therefore its own
+ * source port, the loops only multiplex the channels.
+ * <p>
+ * If the clients have a schedule for a constant request rate, each loop also
+ * acts as scheduler for its clients. It keeps them in a heap ordered by the
+ * intended time of their next request and sends each request when it is due,
+ * so the rate is spread over all loops and cores. A client whose window is
+ * full leaves the heap until a response or timeout frees the window.
+ */
+public class NioClientEngine {
+
+	/** Maximum size of a received response. Longer responses are truncated. */
+	public static final int RECEIVE_BUFFER_SIZE = 1500;
+
+	/** Interval in milliseconds in which the loops check for timeouts. */
+	public static final int TIMEOUT_CHECK_INTERVAL = 100;
+
+	private final int loopCount;
+
+	private SelectorLoop[] loops;
+
+	public NioClientEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public NioClientEngine(int loopCount) {
+		if (loopCount < 1)
+			throw new IllegalArgumentException("Number of loops must be at least 1, but is " + loopCount);
+		this.loopCount = loopCount;
+	}
+
+	/**
+	 * Distributes the clients round-robin over the selector loops and starts
+	 * them. A still running previous run is stopped before.
+	 * 
+	 * @param clients clients to drive
+	 * @throws IOException if a selector cannot be opened or a channel cannot
+	 *             be registered
+	 */
+	public synchronized void start(List<NioVirtualClient> clients) throws IOException {
+		stop();
+		int n = Math.max(1, Math.min(loopCount, clients.size()));
+		SelectorLoop[] loops = new SelectorLoop[n];
+		for (int i = 0; i < n; i++)
+			loops[i] = new SelectorLoop(i);
+		for (int i = 0; i < clients.size(); i++)
+			loops[i % n].add(clients.get(i));
+		for (SelectorLoop loop : loops)
+			loop.start();
+		this.loops = loops;
+	}
+
+	/**
+	 * Stops all selector loops and waits for them to terminate. The channels
+	 * of the clients stay open for the next run.
+	 */
+	public synchronized void stop() {
+		if (loops == null)
+			return;
+		for (SelectorLoop loop : loops)
+			loop.shutdown();
+		for (SelectorLoop loop : loops) {
+			try {
+				loop.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		loops = null;
+	}
+
+	public int getLoopCount() {
+		return loopCount;
+	}
+
+	private static class SelectorLoop extends Thread {
+
+		private final Selector selector;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+		private final List<NioVirtualClient> clients = new ArrayList<NioVirtualClient>();
+
+		// min-heap of the clients with a schedule by their next intended time
+		private NioVirtualClient[] schedule;
+		private long[] due;
+		private int scheduled;
+
+		private volatile boolean running = true;
+
+		private SelectorLoop(int id) throws IOException {
+			super("NioClientEngine-" + id);
+			this.selector = Selector.open();
+		}
+
+		private void add(NioVirtualClient client) throws IOException {
+			client.register(selector);
+			clients.add(client);
+		}
+
+		private void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				schedule = new NioVirtualClient[clients.size()];
+				due = new long[clients.size()];
+				scheduled = 0;
+				for (NioVirtualClient client : clients) {
+					client.schedulePosition = -1;
+					client.begin();
+					if (client.getInterval() > 0)
+						push(client, client.getNextIntended());
+				}
+				long nextCheck = System.nanoTime() + TIMEOUT_CHECK_INTERVAL * 1000000L;
+				while (running) {
+					long now = System.nanoTime();
+					long timeout = nextCheck - now;
+					while (scheduled > 0 && due[0] - now <= 0) {
+						NioVirtualClient client = schedule[0];
+						client.tick(now);
+						long next = client.getNextIntended();
+						if (next - now <= 0)
+							// the window is full, a response or timeout sends the request
+							remove(0);
+						else
+							reschedule(0, next);
+					}
+					if (scheduled > 0)
+						timeout = Math.min(timeout, due[0] - now);
+					if (timeout >= 1000000L) {
+						selector.select(timeout / 1000000L);
+					} else if (selector.selectNow() == 0 && timeout > 0) {
+						// select only waits for milliseconds
+						LockSupport.parkNanos(timeout);
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (key.isValid()) {
+							NioVirtualClient client = (NioVirtualClient) key.attachment();
+							client.receive(buffer);
+							resume(client, System.nanoTime());
+						}
+					}
+					now = System.nanoTime();
+					if (now - nextCheck >= 0) {
+						for (NioVirtualClient client : clients) {
+							client.checkTimeout(now);
+							resume(client, now);
+						}
+						nextCheck = now + TIMEOUT_CHECK_INTERVAL * 1000000L;
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				try {
+					// deregisters the channels, so they can be used with the next run
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/*
+		 * Schedules a client again, which waited for its window, as soon as
+		 * its next request is not overdue anymore. A scheduled client may
+		 * have sent requests after a response, its entry is then early and
+		 * only updated when due.
+		 */
+		private void resume(NioVirtualClient client, long now) {
+			if (client.getInterval() > 0 && client.schedulePosition < 0) {
+				long next = client.getNextIntended();
+				if (next - now > 0)
+					push(client, next);
+			}
+		}
+
+		private void push(NioVirtualClient client, long time) {
+			int position = scheduled++;
+			schedule[position] = client;
+			due[position] = time;
+			client.schedulePosition = position;
+			siftUp(position);
+		}
+
+		private void remove(int position) {
+			schedule[position].schedulePosition = -1;
+			int last = --scheduled;
+			if (position != last) {
+				move(last, position);
+				siftDown(position);
+				siftUp(position);
+			}
+			schedule[last] = null;
+		}
+
+		private void reschedule(int position, long time) {
+			due[position] = time;
+			siftDown(position);
+			siftUp(position);
+		}
+
+		private void siftUp(int position) {
+			while (position > 0) {
+				int parent = (position - 1) / 2;
+				if (due[position] - due[parent] >= 0)
+					break;
+				swap(position, parent);
+				position = parent;
+			}
+		}
+
+		private void siftDown(int position) {
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= scheduled)
+					break;
+				if (child + 1 < scheduled && due[child + 1] - due[child] < 0)
+					child++;
+				if (due[child] - due[position] >= 0)
+					break;
+				swap(position, child);
+				position = child;
+			}
+		}
+
+		private void swap(int a, int b) {
+			NioVirtualClient client = schedule[a];
+			long time = due[a];
+			move(b, a);
+			schedule[b] = client;
+			due[b] = time;
+			client.schedulePosition = b;
+		}
+
+		private void move(int from, int to) {
+			schedule[to] = schedule[from];
+			due[to] = due[from];
+			schedule[to].schedulePosition = to;
+		}
+	}
+}
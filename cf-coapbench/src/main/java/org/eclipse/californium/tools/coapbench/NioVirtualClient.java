@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.tools.coapbench.producer.RequestProducer;
+import org.eclipse.californium.tools.coapbench.producer.TokenMessageProducer;
+import org.eclipse.californium.tools.coapbench.producer.VeryEcoMessageProducer;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMixProducer;
+
+/**
+ * A virtual client driven by a {@link NioClientEngine} instead of its own
+ * thread. It uses a non-blocking {@link DatagramChannel}, bound to its own
+ * local port and connected to the server. The engine calls
+ * {@link #receive(ByteBuffer)} when the channel is readable and
+ * {@link #checkTimeout(long)} periodically. Just like {@link VirtualClient},
+ * the client sends the next request as soon as the response of the previous
+ * one has arrived or has timed out. With a window larger than one, it keeps
+ * that many requests in flight. With a {@link #setSchedule(long, long)
+ * schedule}, the engine calls {@link #tick(long)} to send the requests at
+ * their intended times.
+ */
+public class NioVirtualClient implements VirtualClientDevice {
+
+	public static final int TIMEOUT = VirtualClient.TIMEOUT;
+
+	private static final long TIMEOUT_NANOS = TIMEOUT * 1000000L;
+
+	private DatagramChannel channel;
+	private ByteBuffer sendBuffer;
+	private RequestProducer producer;
+
+	private volatile boolean runnable;
+	// written by a single thread each, read by the sampler
+	private volatile int counter;
+	private volatile int lost;
+
+	private URI uri;
+	private InetSocketAddress destination;
+	private int tokenLength;
+	private WorkloadMix mix;
+	private int key; // MID or token of the last request
+	private long timestamp;
+	private long intended;
+	private boolean pending;
+
+	private LatencyHistogram latencies;
+
+	private int window = 1;
+	private RequestWindow outstanding;
+
+	private long start;
+	private long interval;
+	private long nextIntended;
+	// position in the schedule of the engine's loop, -1 if not scheduled
+	int schedulePosition = -1;
+
+	private boolean checkMID = true;
+	private ResponseValidator validator;
+	private final ResponseStats stats = new ResponseStats();
+	private boolean checkLatency = false;
+
+	public NioVirtualClient(URI uri) throws Exception {
+		this(uri, null);
+	}
+
+	public NioVirtualClient(URI uri, InetSocketAddress addr) throws Exception {
+		this.producer = new VeryEcoMessageProducer();
+		this.runnable = true;
+		bind(addr);
+		setURI(uri);
+	}
+
+	@Override
+	public void bind(InetSocketAddress addr) throws Exception {
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.bind(addr);
+	}
+
+	@Override
+	public void setURI(URI uri) throws UnknownHostException {
+		int port = uri.getPort() == -1 ? 5683 : uri.getPort();
+		InetSocketAddress destination = new InetSocketAddress(InetAddress.getByName(uri.getHost()), port);
+		producer.setURI(uri);
+		try {
+			if (channel.isConnected())
+				channel.disconnect();
+			channel.connect(destination);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot connect to " + destination, e);
+		}
+		this.destination = destination;
+		this.uri = uri;
+	}
+
+	/**
+	 * Registers the channel of this client for reading at the selector.
+	 * 
+	 * @param selector selector of the engine's loop
+	 * @throws ClosedChannelException if the client has been closed
+	 */
+	void register(Selector selector) throws ClosedChannelException {
+		channel.register(selector, SelectionKey.OP_READ, this);
+	}
+
+	/**
+	 * Sends the first request, respectively fills the window. With a schedule,
+	 * the requests are sent by {@link #tick(long)} instead.
+	 */
+	void begin() {
+		pending = false;
+		nextIntended = start;
+		if (window > 1) {
+			if (outstanding == null || outstanding.getSize() != window)
+				outstanding = new RequestWindow(window);
+			else
+				outstanding.clear();
+		}
+		if (interval == 0)
+			for (int i = 0; i < window; i++)
+				sendRequest(-1);
+	}
+
+	/**
+	 * Sends the requests whose intended time has come, as far as the window
+	 * allows it.
+	 * 
+	 * @param now current time in nanoseconds
+	 */
+	void tick(long now) {
+		while (runnable && nextIntended - now <= 0
+				&& (window > 1 ? outstanding.getOutstanding() < window : !pending)) {
+			sendRequest(nextIntended);
+			nextIntended += interval;
+		}
+	}
+
+	private void next(long now) {
+		if (interval > 0)
+			tick(now);
+		else
+			sendRequest(-1);
+	}
+
+	/*
+	 * Sends the next request. The latency is measured from the intended time,
+	 * or from the actual send time, if the intended time is -1.
+	 */
+	private void sendRequest(long intendedTime) {
+		byte[] bytes = producer.next();
+		// a workload mix returns different arrays, so copy them into one buffer
+		if (sendBuffer == null || sendBuffer.capacity() < bytes.length)
+			sendBuffer = ByteBuffer.allocate(Math.max(bytes.length, 64));
+		sendBuffer.clear();
+		sendBuffer.put(bytes).flip();
+		key = tokenLength == 0 ? ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF)
+				: TokenMessageProducer.getKey(bytes, tokenLength);
+		timestamp = System.nanoTime();
+		intended = intendedTime == -1 ? timestamp : intendedTime;
+		pending = true;
+		if (window > 1)
+			lost += outstanding.add(key, intended);
+		try {
+			// if the send buffer is full, the request is lost and times out
+			channel.write(sendBuffer);
+		} catch (PortUnreachableException e) {
+			// ICMP from a previous request, the request times out
+		} catch (IOException e) {
+			if (runnable)
+				e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads all pending responses from the channel and sends the next requests.
+	 * 
+	 * @param buffer receive buffer of the engine's loop
+	 */
+	void receive(ByteBuffer buffer) {
+		try {
+			while (runnable) {
+				buffer.clear();
+				int length = channel.read(buffer);
+				if (length <= 0)
+					return;
+				long now = System.nanoTime();
+				if (RawCoap.isMalformed(buffer, length)) {
+					stats.record(ResponseStats.Outcome.MALFORMED);
+					continue;
+				}
+				long sent;
+				int responseKey = tokenLength == 0 ? ((buffer.get(2) & 0xFF) << 8) | (buffer.get(3) & 0xFF)
+						: TokenMessageProducer.getKey(buffer, tokenLength);
+				if (window > 1) {
+					sent = responseKey < 0 ? -1 : outstanding.remove(responseKey);
+					if (sent < 0)
+						continue; // duplicate or already expired
+				} else {
+					if (!pending || !checkKey(responseKey))
+						continue;
+					pending = false;
+					sent = intended;
+				}
+				if (!checkResponse(buffer, length)) {
+					next(now);
+					continue;
+				}
+				if (checkLatency)
+					latencies.recordNanos(now - sent);
+				counter++;
+				next(now);
+			}
+		} catch (PortUnreachableException e) {
+			// ICMP, the outstanding requests time out
+		} catch (IOException e) {
+			if (runnable)
+				e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Counts the requests outstanding for longer than the timeout as lost and
+	 * sends new ones instead.
+	 * 
+	 * @param now current time in nanoseconds
+	 */
+	void checkTimeout(long now) {
+		if (!runnable)
+			return;
+		if (window > 1) {
+			int expired = outstanding.expire(now, TIMEOUT_NANOS);
+			lost += expired;
+			if (interval > 0)
+				tick(now);
+			else
+				for (int i = 0; i < expired; i++)
+					sendRequest(-1);
+		} else if (pending && now - timestamp >= TIMEOUT_NANOS) {
+			lost++;
+			pending = false;
+			next(now);
+		}
+	}
+
+	private boolean checkKey(int actual) {
+		if (checkMID && actual != key) {
+			// a late response of an earlier request
+			stats.record(tokenLength == 0 ? ResponseStats.Outcome.MID : ResponseStats.Outcome.TOKEN);
+			return false;
+		}
+		return true;
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * Sets the length of the token of the requests. With a token, the
+	 * responses are matched by token instead of by MID.
+	 * 
+	 * @param tokenLength token length in bytes, or 0 for no token
+	 * @see TokenMessageProducer
+	 */
+	@Override
+	public void setTokenLength(int tokenLength) {
+		if (tokenLength == this.tokenLength)
+			return;
+		RequestWindow.checkSize(window, tokenLength);
+		this.tokenLength = tokenLength;
+		updateProducer();
+	}
+
+	public WorkloadMix getWorkloadMix() {
+		return mix;
+	}
+
+	/**
+	 * Sets a workload mix. The client then sends the requests of the mix
+	 * instead of GET requests to its URI and accepts all 2.xx responses.
+	 * 
+	 * @param mix workload mix, or {@code null} for GET requests only
+	 * @see WorkloadMixProducer
+	 */
+	@Override
+	public void setWorkloadMix(WorkloadMix mix) {
+		if (mix == this.mix)
+			return;
+		this.mix = mix;
+		updateProducer();
+	}
+
+	private void updateProducer() {
+		if (mix != null)
+			producer = new WorkloadMixProducer(mix, tokenLength, uri);
+		else if (tokenLength > 0)
+			producer = new TokenMessageProducer(tokenLength, uri);
+		else
+			producer = new VeryEcoMessageProducer(uri);
+	}
+
+	private boolean checkResponse(ByteBuffer buffer, int length) {
+		if (validator != null)
+			return validator.validate(buffer, length, stats);
+		int c = 0xFF & buffer.get(1);
+		// a mix also has POST, PUT and DELETE requests, so accept all success codes
+		if (mix == null ? c == CoAP.ResponseCode.CONTENT.value : (c >>> 5) == 2)
+			return true;
+		stats.recordCode(c);
+		return false;
+	}
+
+	@Override
+	public void setResponseValidator(ResponseValidator validator) {
+		this.validator = validator;
+	}
+
+	@Override
+	public ResponseStats getResponseStats() {
+		return stats;
+	}
+
+	public InetSocketAddress getDestination() {
+		return destination;
+	}
+
+	@Override
+	public void setSchedule(long start, long interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("Interval must not be negative, but is " + interval);
+		this.start = start;
+		this.interval = interval;
+	}
+
+	/**
+	 * Gets the interval between two requests.
+	 * 
+	 * @return interval in nanoseconds, or 0, if the client has no schedule
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the intended time of the next request. If it has passed, the
+	 * client waits for a response or a timeout to free its window.
+	 * 
+	 * @return intended time in nanoseconds
+	 */
+	long getNextIntended() {
+		return nextIntended;
+	}
+
+	@Override
+	public int getWindow() {
+		return window;
+	}
+
+	@Override
+	public void setWindow(int window) {
+		RequestWindow.checkSize(window, tokenLength);
+		this.window = window;
+	}
+
+	@Override
+	public boolean isCheckLatency() {
+		return checkLatency;
+	}
+
+	@Override
+	public void setCheckLatency(boolean checkLatency) {
+		// allocate the histogram only if required, it takes some kB per client
+		if (checkLatency && latencies == null)
+			latencies = new LatencyHistogram();
+		this.checkLatency = checkLatency;
+	}
+
+	@Override
+	public int getCount() {
+		return counter;
+	}
+
+	@Override
+	public int getTimeouts() {
+		return lost;
+	}
+
+	/**
+	 * Gets the latencies of the responses.
+	 * 
+	 * @return histogram of the latencies, or {@code null}, if latencies are
+	 *         not measured
+	 */
+	@Override
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return runnable;
+	}
+
+	@Override
+	public void stop() {
+		runnable = false;
+	}
+
+	@Override
+	public void reset() {
+		runnable = true;
+		counter = 0;
+		lost = 0;
+		stats.clear();
+		if (latencies != null)
+			latencies.clear();
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the notifications of a single virtual server. The pacer schedules
+ * notifications at a mean rate with fixed or exponentially distributed
+ * (Poisson) inter-arrival times and holds the sender until the next one is
+ * due.
+ * <p>
+ * The schedule acts as a token bucket of the given burst size: a server that
+ * falls behind may catch up with at most burst notifications back to back.
+ * Notifications that could not be sent in time beyond that are dropped from
+ * the schedule and counted as missed, so that a saturated sender is not
+ * mistaken for loss at the observer. All pacers may additionally share a
+ * {@link RateCap} limiting the total rate of all servers.
+ */
+public class NotificationPacer {
+
+	public enum Arrival {
+		FIXED, POISSON;
+
+		public static Arrival fromName(String name) {
+			for (Arrival arrival : values())
+				if (arrival.name().equalsIgnoreCase(name))
+					return arrival;
+			throw new IllegalArgumentException("Unknown arrival " + name + ", use fixed or poisson");
+		}
+	}
+
+	public static final int DEFAULT_BURST = 10;
+
+	private final long interval; // mean in nanoseconds, 0 for no limit
+	private final Arrival arrival;
+	private final long depth; // nanoseconds the schedule may lag behind
+	private final RateCap cap;
+
+	private long next;
+	private volatile int missed;
+
+	/**
+	 * Creates a pacer.
+	 * 
+	 * @param rate notifications per second of the server, or 0 to only apply
+	 *            the cap
+	 * @param arrival distribution of the inter-arrival times
+	 * @param burst notifications the server may send back to back to catch up
+	 * @param cap shared cap of all servers, or null
+	 */
+	public NotificationPacer(int rate, Arrival arrival, int burst, RateCap cap) {
+		if (rate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + rate);
+		if (burst < 1)
+			throw new IllegalArgumentException("Burst must be at least 1, but is " + burst);
+		this.interval = rate == 0 ? 0 : 1000000000L / rate;
+		this.arrival = arrival;
+		this.depth = (burst - 1) * interval;
+		this.cap = cap;
+	}
+
+	/**
+	 * Starts the schedule. The first notification is due at a random point
+	 * within the first interval so that servers started together do not send
+	 * in lockstep.
+	 */
+	public void start() {
+		next = System.nanoTime() + (long) (ThreadLocalRandom.current().nextDouble() * interval);
+		missed = 0;
+	}
+
+	/**
+	 * Waits until the next notification is due.
+	 */
+	public void await() {
+		if (interval > 0) {
+			long late = System.nanoTime() - depth;
+			// the bucket is full, drop the notifications that did not fit
+			while (next - late < 0) {
+				next += nextInterval();
+				++missed;
+			}
+			park(next);
+			next += nextInterval();
+		}
+		if (cap != null)
+			cap.acquire();
+	}
+
+	private long nextInterval() {
+		if (arrival == Arrival.POISSON)
+			return (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * interval);
+		return interval;
+	}
+
+	/**
+	 * Returns the number of scheduled notifications the server could not send
+	 * in time.
+	 */
+	public int getMissed() {
+		return missed;
+	}
+
+	private static void park(long until) {
+		long delay;
+		while ((delay = until - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+	}
+
+	/**
+	 * Caps the total notification rate of all servers sharing it. The cap
+	 * follows the generic cell rate algorithm: each notification reserves the
+	 * next free slot with a single compare-and-set, an idle cap lets a burst of
+	 * slots pass immediately.
+	 */
+	public static class RateCap {
+
+		private final long interval;
+		private final long tolerance;
+		private final AtomicLong theoretical = new AtomicLong(System.nanoTime());
+
+		public RateCap(int rate, int burst) {
+			if (rate < 1)
+				throw new IllegalArgumentException("Rate must be at least 1, but is " + rate);
+			if (burst < 1)
+				throw new IllegalArgumentException("Burst must be at least 1, but is " + burst);
+			this.interval = 1000000000L / rate;
+			this.tolerance = (burst - 1) * interval;
+		}
+
+		/**
+		 * Waits for the next free slot.
+		 */
+		public void acquire() {
+			long now = System.nanoTime();
+			long slot;
+			while (true) {
+				long current = theoretical.get();
+				slot = Math.max(current, now - tolerance);
+				if (theoretical.compareAndSet(current, slot + interval))
+					break;
+			}
+			park(slot);
+		}
+	}
+}
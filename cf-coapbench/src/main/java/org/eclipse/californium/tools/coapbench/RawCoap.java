@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers to read and patch serialized CoAP messages in place, without parsing
+ * them into objects. The methods do not validate the messages beyond what they
+ * need to find the requested fields.
+ */
+final class RawCoap {
+
+	public static final int OPTION_CONTENT_FORMAT = 12;
+	public static final int OPTION_BLOCK2 = 23;
+	public static final int OPTION_BLOCK1 = 27;
+	public static final int OPTION_SIZE1 = 60;
+
+	private static final int PAYLOAD_MARKER = 0xFF;
+
+	private RawCoap() { }
+
+	/**
+	 * Checks, if a received datagram is too short for the header and the
+	 * token of a CoAP message. The other fields must not be read then.
+	 * 
+	 * @param bytes received datagram
+	 * @param length length of the datagram
+	 * @return {@code true}, if the datagram is not a CoAP message
+	 */
+	public static boolean isMalformed(byte[] bytes, int length) {
+		return length < 4 || isMalformed(bytes[0], length);
+	}
+
+	public static boolean isMalformed(ByteBuffer message, int length) {
+		return length < 4 || isMalformed(message.get(0), length);
+	}
+
+	private static boolean isMalformed(byte first, int length) {
+		int tokenLength = first & 0x0F;
+		return tokenLength > 8 || length < 4 + tokenLength;
+	}
+
+	public static int getCode(byte[] bytes) {
+		return bytes[1] & 0xFF;
+	}
+
+	public static int getMID(byte[] bytes) {
+		return ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+
+	public static void setMID(byte[] bytes, int mid) {
+		bytes[2] = (byte) (mid >> 8);
+		bytes[3] = (byte) mid;
+	}
+
+	/**
+	 * Finds an option.
+	 * 
+	 * @param bytes message
+	 * @param length length of the message
+	 * @param number option number
+	 * @return position of the first byte of the option's value, or -1, if the
+	 *         message does not have the option. The length of the value is
+	 *         stored in the upper 16 bits, i.e., use
+	 *         {@link #offset(long)} and {@link #length(long)}.
+	 */
+	public static long findOption(byte[] bytes, int length, int number) {
+		return findOption(ByteBuffer.wrap(bytes), length, number);
+	}
+
+	/**
+	 * Finds an option.
+	 * 
+	 * @param message message, read with absolute gets
+	 * @param length length of the message
+	 * @param number option number
+	 * @return position and length of the option's value, or -1, see
+	 *         {@link #findOption(byte[], int, int)}
+	 */
+	public static long findOption(ByteBuffer message, int length, int number) {
+		int position = 4 + (message.get(0) & 0x0F);
+		int current = 0;
+		while (position < length) {
+			int header = message.get(position++) & 0xFF;
+			if (header == PAYLOAD_MARKER)
+				break;
+			int delta = header >> 4;
+			int valueLength = header & 0x0F;
+			if (delta == 13) {
+				delta = (message.get(position++) & 0xFF) + 13;
+			} else if (delta == 14) {
+				delta = (((message.get(position) & 0xFF) << 8) | (message.get(position + 1) & 0xFF)) + 269;
+				position += 2;
+			}
+			if (valueLength == 13) {
+				valueLength = (message.get(position++) & 0xFF) + 13;
+			} else if (valueLength == 14) {
+				valueLength = (((message.get(position) & 0xFF) << 8) | (message.get(position + 1) & 0xFF)) + 269;
+				position += 2;
+			}
+			current += delta;
+			if (current == number)
+				return ((long) valueLength << 32) | position;
+			if (current > number)
+				break;
+			position += valueLength;
+		}
+		return -1;
+	}
+
+	public static int offset(long option) {
+		return (int) option;
+	}
+
+	public static int length(long option) {
+		return (int) (option >>> 32);
+	}
+
+	/**
+	 * Gets the position of the payload.
+	 * 
+	 * @param bytes message
+	 * @param length length of the message
+	 * @return position of the first payload byte, or length, if the message
+	 *         has no payload
+	 */
+	public static int getPayloadOffset(byte[] bytes, int length) {
+		return getPayloadOffset(ByteBuffer.wrap(bytes), length);
+	}
+
+	public static int getPayloadOffset(ByteBuffer message, int length) {
+		int position = 4 + (message.get(0) & 0x0F);
+		while (position < length) {
+			int header = message.get(position++) & 0xFF;
+			if (header == PAYLOAD_MARKER)
+				return position;
+			int delta = header >> 4;
+			int valueLength = header & 0x0F;
+			if (delta == 13)
+				position += 1;
+			else if (delta == 14)
+				position += 2;
+			if (valueLength == 13) {
+				valueLength = (message.get(position++) & 0xFF) + 13;
+			} else if (valueLength == 14) {
+				valueLength = (((message.get(position) & 0xFF) << 8) | (message.get(position + 1) & 0xFF)) + 269;
+				position += 2;
+			}
+			position += valueLength;
+		}
+		return length;
+	}
+
+	public static int getUint(byte[] bytes, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++)
+			value = (value << 8) | (bytes[i] & 0xFF);
+		return value;
+	}
+
+	public static int getUint(ByteBuffer message, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++)
+			value = (value << 8) | (message.get(i) & 0xFF);
+		return value;
+	}
+
+	public static void setUint(byte[] bytes, int offset, int length, int value) {
+		for (int i = offset + length - 1; i >= offset; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	/**
+	 * Gets a block option value.
+	 * 
+	 * @param bytes message
+	 * @param length length of the message
+	 * @param number {@link #OPTION_BLOCK1} or {@link #OPTION_BLOCK2}
+	 * @return value of the option ({@code num << 4 | m << 3 | szx}), or -1, if
+	 *         the message does not have the option
+	 */
+	public static int getBlock(byte[] bytes, int length, int number) {
+		long option = findOption(bytes, length, number);
+		if (option < 0)
+			return -1;
+		return getUint(bytes, offset(option), length(option));
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Window of outstanding requests of a pipelined {@link VirtualClient}. The
+ * window keeps the send timestamp of each outstanding request keyed by its
+ * MID, or by the key of its token, see
+ * {@link org.eclipse.californium.tools.coapbench.producer.TokenMessageProducer#getKey(byte[], int)}.
+ * The sender blocks in {@link #await(long)} while the window is full and the
+ * receiver frees a slot with {@link #remove(int)} for each response.
+ * <p>
+ * The slots are indexed by the lower bits of the key. Since keys are assigned
+ * sequentially, a slot is only reused by a newer request if the older request
+ * has not been answered for at least twice the window size. Such an old request
+ * is then considered lost. The keys wrap, so the window must not be larger
+ * than half of the key range, see {@link #getMaxSize(int)}.
+ * <p>
+ * The window uses a {@link ReentrantLock} instead of synchronized methods, so
+ * a virtual thread waiting for room does not pin its carrier thread.
+ */
+public class RequestWindow {
+
+	public static final int MAX_SIZE = 1 << 15;
+
+	private static final int EMPTY = -1;
+
+	private final int size;
+	private final int mask;
+	private final int[] keys;
+	private final long[] timestamps;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition room = lock.newCondition();
+
+	private int outstanding;
+	private boolean released;
+
+	/**
+	 * Gets the largest window for a token length. MIDs and the keys of tokens
+	 * with two or more bytes wrap at 65536 or later, the keys of one byte
+	 * tokens already at 256.
+	 * 
+	 * @param tokenLength token length in bytes, or 0 for MIDs
+	 * @return largest window size
+	 */
+	public static int getMaxSize(int tokenLength) {
+		return tokenLength == 1 ? 1 << 7 : MAX_SIZE;
+	}
+
+	/**
+	 * Checks, if a window size fits the keys of a token length.
+	 * 
+	 * @param size window size
+	 * @param tokenLength token length in bytes, or 0 for MIDs
+	 * @throws IllegalArgumentException if the size is not in [1,
+	 *             {@link #getMaxSize(int)}]
+	 */
+	public static void checkSize(int size, int tokenLength) {
+		int max = getMaxSize(tokenLength);
+		if (size < 1 || size > max)
+			throw new IllegalArgumentException("Window must be in [1, " + max + "] for token length " + tokenLength + ", but is " + size);
+	}
+
+	public RequestWindow(int size) {
+		if (size < 1 || size > MAX_SIZE)
+			throw new IllegalArgumentException("Window size must be in [1, " + MAX_SIZE + "], but is " + size);
+		int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+		this.size = size;
+		this.mask = capacity - 1;
+		this.keys = new int[capacity];
+		this.timestamps = new long[capacity];
+		clear();
+	}
+
+	/**
+	 * Waits until the window has room for another request.
+	 *
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return {@code true}, if a request may be sent, {@code false}, if the
+	 *         window is still full after the timeout or has been
+	 *         {@link #release() released}
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		try {
+			while (outstanding >= size) {
+				if (remaining <= 0 || released)
+					return false;
+				remaining = room.awaitNanos(remaining);
+			}
+			return !released;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds a request to the window.
+	 *
+	 * @param key MID or token key of the request
+	 * @param timestamp send time in nanoseconds
+	 * @return number of older outstanding requests that have been replaced and
+	 *         are therefore lost (0 or 1)
+	 */
+	public int add(int key, long timestamp) {
+		int index = key & mask;
+		int lost = 0;
+		lock.lock();
+		try {
+			if (keys[index] == EMPTY)
+				outstanding++;
+			else
+				lost = 1;
+			keys[index] = key;
+			timestamps[index] = timestamp;
+		} finally {
+			lock.unlock();
+		}
+		return lost;
+	}
+
+	/**
+	 * Removes the request with the given key from the window.
+	 *
+	 * @param key MID or token key of the response
+	 * @return send time of the request in nanoseconds, or {@code -1}, if no
+	 *         request with this key is outstanding
+	 */
+	public long remove(int key) {
+		int index = key & mask;
+		lock.lock();
+		try {
+			if (keys[index] != key)
+				return -1;
+			keys[index] = EMPTY;
+			outstanding--;
+			room.signal();
+			return timestamps[index];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all requests which are outstanding for longer than the timeout.
+	 *
+	 * @param now current time in nanoseconds
+	 * @param timeout timeout in nanoseconds
+	 * @return number of removed requests
+	 */
+	public int expire(long now, long timeout) {
+		int expired = 0;
+		lock.lock();
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != EMPTY && now - timestamps[i] >= timeout) {
+					keys[i] = EMPTY;
+					expired++;
+				}
+			}
+			if (expired > 0) {
+				outstanding -= expired;
+				room.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return expired;
+	}
+
+	public int getOutstanding() {
+		lock.lock();
+		try {
+			return outstanding;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Releases a sender waiting in {@link #await(long)}, e.g., when the client
+	 * is stopped. The window stays released until it is cleared.
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			released = true;
+			room.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = EMPTY;
+			outstanding = 0;
+			released = false;
+			room.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
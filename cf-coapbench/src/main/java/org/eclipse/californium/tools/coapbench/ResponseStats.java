@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.Arrays;
+
+/**
+ * Counts the rejected responses of a client by the failed check and by the
+ * response code. Only rejected responses are counted, so the valid responses
+ * do not pay for it. The table of the codes is only allocated with the first
+ * rejected code. The counts are recorded by the client's receiving thread and
+ * summarized at the end of a run.
+ */
+public class ResponseStats {
+
+	public enum Outcome {
+		CODE("code"), MID("MID"), TOKEN("token"), PAYLOAD("payload"), CONTENT_FORMAT("content-format"),
+		MALFORMED("malformed");
+
+		private final String name;
+
+		private Outcome(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	// CoAP codes are stored as class * 100 + detail, e.g., 5.03 as 503
+	private static final int CODES = 600;
+
+	private final long[] outcomes = new long[OUTCOMES.length];
+	private long[] codes;
+	private boolean http;
+
+	public void record(Outcome outcome) {
+		outcomes[outcome.ordinal()]++;
+	}
+
+	/**
+	 * Records a response with an unexpected CoAP code.
+	 * 
+	 * @param code code byte of the response
+	 */
+	public void recordCode(int code) {
+		record(Outcome.CODE);
+		countCode(Math.min((code >>> 5) * 100 + (code & 0x1F), CODES - 1), 1);
+	}
+
+	/**
+	 * Records a response with an unexpected HTTP status code.
+	 * 
+	 * @param status status code
+	 */
+	public void recordStatus(int status) {
+		http = true;
+		record(Outcome.CODE);
+		countCode(Math.max(0, Math.min(status, CODES - 1)), 1);
+	}
+
+	public long get(Outcome outcome) {
+		return outcomes[outcome.ordinal()];
+	}
+
+	/**
+	 * Gets the number of rejected responses.
+	 * 
+	 * @return sum of all outcomes
+	 */
+	public long getRejected() {
+		long sum = 0;
+		for (long count : outcomes)
+			sum += count;
+		return sum;
+	}
+
+	public boolean isEmpty() {
+		return getRejected() == 0;
+	}
+
+	public void add(ResponseStats other) {
+		for (int i = 0; i < outcomes.length; i++)
+			outcomes[i] += other.outcomes[i];
+		long[] otherCodes = other.codes;
+		if (otherCodes != null)
+			for (int i = 0; i < CODES; i++)
+				if (otherCodes[i] > 0)
+					countCode(i, otherCodes[i]);
+		http |= other.http;
+	}
+
+	private void countCode(int index, long count) {
+		if (codes == null)
+			codes = new long[CODES];
+		codes[index] += count;
+	}
+
+	public void clear() {
+		Arrays.fill(outcomes, 0);
+		if (codes != null)
+			Arrays.fill(codes, 0);
+	}
+
+	/**
+	 * Formats the counts, e.g., "4.04: 120, 5.03: 7, MID: 3".
+	 * 
+	 * @return the non-zero counts of the codes and the other outcomes
+	 */
+	public String format() {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; codes != null && i < CODES; i++) {
+			long count = codes[i];
+			if (count > 0) {
+				if (line.length() > 0)
+					line.append(", ");
+				line.append(http ? Integer.toString(i) : String.format("%d.%02d", i / 100, i % 100)).append(": ").append(count);
+			}
+		}
+		for (Outcome outcome : OUTCOMES) {
+			long count = get(outcome);
+			if (count > 0 && outcome != Outcome.CODE) {
+				if (line.length() > 0)
+					line.append(", ");
+				line.append(outcome).append(": ").append(count);
+			}
+		}
+		return line.toString();
+	}
+}
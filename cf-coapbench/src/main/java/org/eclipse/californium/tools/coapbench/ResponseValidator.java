@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks a CoAP response before a client counts it as completed. A rejected
+ * response still completes its request, but it is counted in the
+ * {@link ResponseStats} of the client instead of the completed requests and
+ * the latencies. Validators are called for each response, so they must not
+ * block, allocate or print.
+ */
+public interface ResponseValidator {
+
+	/**
+	 * Validates a response.
+	 * 
+	 * @param response response, read with absolute gets only
+	 * @param length length of the response
+	 * @param stats statistics to record a rejection
+	 * @return {@code true}, if the response is valid
+	 */
+	boolean validate(ByteBuffer response, int length, ResponseStats stats);
+
+	/**
+	 * Accepts a single response code or any code of a class.
+	 */
+	public static class Code implements ResponseValidator {
+
+		private final int code;
+		private final boolean anyDetail;
+
+		/**
+		 * Creates a validator for a code, e.g., "2.05", or a class, e.g.,
+		 * "2.xx".
+		 * 
+		 * @param code code or class
+		 * @throws IllegalArgumentException if the code is not of the form
+		 *             c.dd or c.xx
+		 */
+		public Code(String code) {
+			if (!code.matches("[0-7]\\.([0-2][0-9]|3[01]|xx)"))
+				throw new IllegalArgumentException("Response code must be of the form 2.05 or 2.xx, but is " + code);
+			this.anyDetail = code.endsWith("xx");
+			this.code = ((code.charAt(0) - '0') << 5) | (anyDetail ? 0 : Integer.parseInt(code.substring(2)));
+		}
+
+		public boolean validate(ByteBuffer response, int length, ResponseStats stats) {
+			int c = response.get(1) & 0xFF;
+			if (anyDetail ? (c >>> 5) == (code >>> 5) : c == code)
+				return true;
+			stats.recordCode(c);
+			return false;
+		}
+	}
+
+	/**
+	 * Accepts responses with a Content-Format option of the expected value.
+	 */
+	public static class ContentFormat implements ResponseValidator {
+
+		private final int format;
+
+		public ContentFormat(int format) {
+			this.format = format;
+		}
+
+		public boolean validate(ByteBuffer response, int length, ResponseStats stats) {
+			long option = RawCoap.findOption(response, length, RawCoap.OPTION_CONTENT_FORMAT);
+			if (option >= 0 && RawCoap.getUint(response, RawCoap.offset(option), RawCoap.length(option)) == format)
+				return true;
+			stats.record(ResponseStats.Outcome.CONTENT_FORMAT);
+			return false;
+		}
+	}
+
+	/**
+	 * Accepts responses with the same payload as the first response, compared
+	 * by a FNV-1a hash of the payload. A validator instance must therefore
+	 * only be used by one client.
+	 */
+	public static class PayloadHash implements ResponseValidator {
+
+		private boolean learned;
+		private int hash;
+
+		public boolean validate(ByteBuffer response, int length, ResponseStats stats) {
+			int h = 0x811C9DC5;
+			for (int i = RawCoap.getPayloadOffset(response, length); i < length; i++)
+				h = (h ^ (response.get(i) & 0xFF)) * 0x01000193;
+			if (!learned) {
+				hash = h;
+				learned = true;
+			} else if (h != hash) {
+				stats.record(ResponseStats.Outcome.PAYLOAD);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Applies validators in order until one rejects the response.
+	 */
+	public static class Pipeline implements ResponseValidator {
+
+		private final ResponseValidator[] validators;
+
+		public Pipeline(ResponseValidator... validators) {
+			this.validators = validators.clone();
+		}
+
+		public boolean validate(ByteBuffer response, int length, ResponseStats stats) {
+			for (ResponseValidator validator : validators)
+				if (!validator.validate(response, length, stats))
+					return false;
+			return true;
+		}
+	}
+}
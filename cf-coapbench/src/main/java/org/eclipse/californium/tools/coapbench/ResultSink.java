@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Writes benchmark results as records of fixed columns into a file. The
+ * records are queued and encoded by a writer thread, so reporting at high
+ * rates is not blocked by the disk. The writer flushes whenever it has
+ * drained the queue. Metadata, e.g., the URI or the concurrency of a run, is
+ * written in between the records. If the file fails, the writer stops and
+ * the sink discards further records.
+ */
+public class ResultSink {
+
+	public enum Format {
+		CSV("csv"), JSON("jsonl"), BINARY("bin");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public Encoder newEncoder() {
+			switch (this) {
+			case CSV:
+				return new CsvEncoder();
+			case JSON:
+				return new JsonLinesEncoder();
+			default:
+				return new BinaryEncoder();
+			}
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		public static Format fromName(String name) {
+			for (Format format : values())
+				if (format.name().equalsIgnoreCase(name))
+					return format;
+			throw new IllegalArgumentException("Unknown result format " + name + ", use csv, json or binary");
+		}
+	}
+
+	/**
+	 * Encodes the records of a sink. The values are {@link Number}s,
+	 * {@link String}s or {@code null}. An encoder is only called by the writer
+	 * thread.
+	 */
+	public interface Encoder {
+
+		void begin(OutputStream out, String[] columns) throws IOException;
+
+		void metadata(Map<String, ?> metadata) throws IOException;
+
+		void record(Object[] values) throws IOException;
+
+		void flush() throws IOException;
+	}
+
+	public static final int QUEUE_SIZE = 4096;
+
+	private static final Object CLOSE = new Object();
+
+	private final String[] columns;
+	private final Encoder encoder;
+	private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+	private final Thread writer;
+	private final OutputStream out;
+	private volatile int dropped;
+	private volatile IOException failure;
+	/** Set by the writer thread, before it releases the waiting flushes. */
+	private volatile boolean finished;
+
+	public ResultSink(String name, Format format, String[] columns) throws IOException {
+		this(name, format.getExtension(), format.newEncoder(), columns);
+	}
+
+	/**
+	 * Creates a sink, which writes into a new file.
+	 * 
+	 * @param name name of the file without extension, if it exists, a number
+	 *            is appended
+	 * @param extension extension of the file
+	 * @param encoder encoder of the records
+	 * @param columns names of the columns
+	 * @throws IOException if the file cannot be created
+	 */
+	public ResultSink(String name, String extension, Encoder encoder, String[] columns) throws IOException {
+		File file = new File(name + "." + extension);
+		for (int c = 1; file.exists(); c++)
+			file = new File(name + "(" + c + ")." + extension);
+		this.columns = columns.clone();
+		this.encoder = encoder;
+		this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+		encoder.begin(out, this.columns);
+		System.out.println("Created result file " + file.getAbsolutePath());
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			} }, "ResultSink-" + file.getName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queues a record. If the writer cannot keep up and the queue is full,
+	 * the record is dropped and counted instead of blocking the caller.
+	 * 
+	 * @param values values in the order of the columns
+	 */
+	public void write(Object... values) {
+		if (values.length != columns.length)
+			throw new IllegalArgumentException("Expected " + columns.length + " values, but got " + values.length);
+		if (finished)
+			return;
+		if (!queue.offer(values))
+			dropped++;
+	}
+
+	/**
+	 * Queues metadata.
+	 * 
+	 * @param metadata names and values
+	 */
+	public void metadata(Map<String, ?> metadata) {
+		if (finished)
+			return;
+		if (!queue.offer(new LinkedHashMap<String, Object>(metadata)))
+			dropped++;
+	}
+
+	/**
+	 * Waits until all queued records are written to the file. Returns at once,
+	 * if the writer has already stopped.
+	 */
+	public void flush() {
+		if (finished)
+			return;
+		CountDownLatch flushed = new CountDownLatch(1);
+		try {
+			queue.put(flushed);
+			// if the writer stopped after the put, it has either released
+			// the latch or will drain it from the queue
+			if (!finished)
+				flushed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes the queued records and closes the file.
+	 */
+	public void close() {
+		try {
+			if (!finished)
+				queue.put(CLOSE);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (dropped > 0)
+			System.err.println("Result sink dropped " + dropped + " records");
+	}
+
+	public int getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Gets the error, which stopped the writer.
+	 * 
+	 * @return error, or {@code null} if the file was written without error
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void drain() {
+		List<Object> batch = new ArrayList<Object>();
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				for (Object entry : batch) {
+					if (entry == CLOSE) {
+						encoder.flush();
+						out.close();
+						return;
+					} else if (entry instanceof CountDownLatch) {
+						encoder.flush();
+						((CountDownLatch) entry).countDown();
+					} else if (entry instanceof Map) {
+						encoder.metadata((Map<String, ?>) entry);
+					} else {
+						encoder.record((Object[]) entry);
+					}
+				}
+				batch.clear();
+				if (queue.isEmpty())
+					encoder.flush();
+			}
+		} catch (IOException e) {
+			failure = e;
+			System.err.println("Result sink failed, discard further records: " + e);
+			try {
+				out.close();
+			} catch (IOException ignore) {
+			}
+		} catch (InterruptedException e) {
+			// exit
+		} finally {
+			// do not block callers of flush if the file failed, neither
+			// the current ones nor the ones queued after the failure
+			finished = true;
+			queue.drainTo(batch);
+			for (Object entry : batch)
+				if (entry instanceof CountDownLatch)
+					((CountDownLatch) entry).countDown();
+		}
+	}
+
+	/**
+	 * Gets the metadata of the benchmark environment: the URI, the host, the
+	 * JVM, the OS, the number of cores and the current time.
+	 * 
+	 * @param uri URI of the benchmark
+	 * @return metadata
+	 */
+	public static Map<String, Object> environment(URI uri) {
+		Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+		metadata.put("uri", String.valueOf(uri));
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			host = "unknown";
+		}
+		metadata.put("host", host);
+		metadata.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		metadata.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+		metadata.put("cores", Runtime.getRuntime().availableProcessors());
+		metadata.put("created", Instant.now().toString());
+		return metadata;
+	}
+
+	private static String formatNumber(Object value) {
+		if (value instanceof Double || value instanceof Float)
+			return String.format(Locale.ROOT, "%.3f", ((Number) value).doubleValue());
+		return value.toString();
+	}
+
+	/**
+	 * A header line with the columns and a line of comma separated values per
+	 * record. Metadata is written as "# name=value" comment lines.
+	 */
+	static class CsvEncoder implements Encoder {
+
+		private Writer out;
+
+		public void begin(OutputStream out, String[] columns) throws IOException {
+			this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			for (int i = 0; i < columns.length; i++)
+				this.out.write(i == 0 ? columns[i] : "," + columns[i]);
+			this.out.write("\n");
+		}
+
+		public void metadata(Map<String, ?> metadata) throws IOException {
+			for (Map.Entry<String, ?> entry : metadata.entrySet())
+				out.write("# " + entry.getKey() + "=" + entry.getValue() + "\n");
+		}
+
+		public void record(Object[] values) throws IOException {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0)
+					line.append(',');
+				if (values[i] instanceof String)
+					line.append('"').append(((String) values[i]).replace("\"", "\"\"")).append('"');
+				else if (values[i] != null)
+					line.append(formatNumber(values[i]));
+			}
+			out.write(line.append('\n').toString());
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * A JSON object per line. Metadata is written as {"meta":{...}} line.
+	 */
+	static class JsonLinesEncoder implements Encoder {
+
+		private Writer out;
+		private String[] columns;
+
+		public void begin(OutputStream out, String[] columns) throws IOException {
+			this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			this.columns = columns;
+		}
+
+		public void metadata(Map<String, ?> metadata) throws IOException {
+			StringBuilder line = new StringBuilder("{\"meta\":{");
+			boolean first = true;
+			for (Map.Entry<String, ?> entry : metadata.entrySet()) {
+				if (!first)
+					line.append(',');
+				first = false;
+				appendValue(line.append('"').append(RunResult.escapeJson(entry.getKey())).append("\":"), entry.getValue());
+			}
+			out.write(line.append("}}\n").toString());
+		}
+
+		public void record(Object[] values) throws IOException {
+			StringBuilder line = new StringBuilder("{");
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0)
+					line.append(',');
+				appendValue(line.append('"').append(columns[i]).append("\":"), values[i]);
+			}
+			out.write(line.append("}\n").toString());
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		private static void appendValue(StringBuilder line, Object value) {
+			if (value == null)
+				line.append("null");
+			else if (value instanceof Number)
+				line.append(formatNumber(value));
+			else
+				line.append('"').append(RunResult.escapeJson(value.toString())).append('"');
+		}
+	}
+
+	/**
+	 * A compact binary encoding for long runs with short intervals. All
+	 * numbers are big endian, strings are modified UTF-8 as written by
+	 * {@link DataOutputStream#writeUTF(String)}.
+	 * <pre>
+	 * file     = "CBR1" columns:u16 name:utf* entry*
+	 * entry    = 'R' value*                  (one value per column)
+	 *          | 'M' count:u16 (name:utf value)*
+	 * value    = 0                           (null)
+	 *          | 1 long:i64 | 2 double:f64 | 3 string:utf
+	 * </pre>
+	 */
+	static class BinaryEncoder implements Encoder {
+
+		private static final int MAGIC = 0x43425231; // CBR1
+
+		private DataOutputStream out;
+
+		public void begin(OutputStream out, String[] columns) throws IOException {
+			this.out = new DataOutputStream(out);
+			this.out.writeInt(MAGIC);
+			this.out.writeShort(columns.length);
+			for (String column : columns)
+				this.out.writeUTF(column);
+		}
+
+		public void metadata(Map<String, ?> metadata) throws IOException {
+			out.writeByte('M');
+			out.writeShort(metadata.size());
+			for (Map.Entry<String, ?> entry : metadata.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeValue(entry.getValue());
+			}
+		}
+
+		public void record(Object[] values) throws IOException {
+			out.writeByte('R');
+			for (Object value : values)
+				writeValue(value);
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		private void writeValue(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(0);
+			} else if (value instanceof Double || value instanceof Float) {
+				out.writeByte(2);
+				out.writeDouble(((Number) value).doubleValue());
+			} else if (value instanceof Number) {
+				out.writeByte(1);
+				out.writeLong(((Number) value).longValue());
+			} else {
+				out.writeByte(3);
+				out.writeUTF(value.toString());
+			}
+		}
+	}
+}
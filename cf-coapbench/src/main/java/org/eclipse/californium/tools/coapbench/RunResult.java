@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.Locale;
+
+/**
+ * The counters and latencies of a benchmark run. A slave sends the result of
+ * each run to the master as a single line of space separated name=value
+ * pairs, the master merges the results of all slaves into a cluster-wide
+ * result.
+ * <pre>
+ * result run=3 devices=100 time=30012 completed=1234567 timeouts=12 latencies=0:5,17:230,...
+ * </pre>
+ */
+public class RunResult {
+
+	public static final String CMD_RESULT = "result";
+
+	private int run;
+	private int slaves;
+	private int devices;
+	private long time; // ms
+	private long completed;
+	private long timeouts;
+	private double throughput;
+	private LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * Creates an empty cluster-wide result to merge the slaves' results into.
+	 * 
+	 * @param run run id
+	 */
+	public RunResult(int run) {
+		this.run = run;
+	}
+
+	/**
+	 * Creates the result of a single slave.
+	 * 
+	 * @param run run id assigned by the master, or 0
+	 * @param devices number of virtual devices
+	 * @param time duration of the run in milliseconds
+	 * @param completed completed requests or received notifications
+	 * @param timeouts timed out requests or lost notifications
+	 * @param latencies latencies, may be null
+	 */
+	public RunResult(int run, int devices, long time, long completed, long timeouts, LatencyHistogram latencies) {
+		this.run = run;
+		this.slaves = 1;
+		this.devices = devices;
+		this.time = time;
+		this.completed = completed;
+		this.timeouts = timeouts;
+		this.throughput = time == 0 ? 0 : completed * 1000.0 / time;
+		if (latencies != null)
+			this.latencies.add(latencies);
+	}
+
+	/**
+	 * Adds the result of another slave. The slaves run concurrently, so the
+	 * throughputs add up while the time is the longest of all slaves.
+	 * 
+	 * @param other result of another slave
+	 */
+	public void merge(RunResult other) {
+		slaves += other.slaves;
+		devices += other.devices;
+		time = Math.max(time, other.time);
+		completed += other.completed;
+		timeouts += other.timeouts;
+		throughput += other.throughput;
+		latencies.add(other.latencies);
+	}
+
+	public String encode() {
+		return CMD_RESULT + " run=" + run + " devices=" + devices + " time=" + time + " completed=" + completed
+				+ " timeouts=" + timeouts + " latencies=" + latencies.encode();
+	}
+
+	/**
+	 * Decodes a result line sent by a slave.
+	 * 
+	 * @param line line starting with {@link #CMD_RESULT}
+	 * @return the result
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	public static RunResult decode(String line) {
+		String[] parts = line.trim().split(" ");
+		if (!parts[0].equals(CMD_RESULT))
+			throw new IllegalArgumentException("Not a result: " + line);
+		int run = 0;
+		int devices = 0;
+		long time = 0;
+		long completed = 0;
+		long timeouts = 0;
+		LatencyHistogram latencies = null;
+		try {
+			for (int i = 1; i < parts.length; i++) {
+				int eq = parts[i].indexOf('=');
+				if (eq < 0)
+					throw new IllegalArgumentException("Malformed result field " + parts[i]);
+				String name = parts[i].substring(0, eq);
+				String value = parts[i].substring(eq + 1);
+				if (name.equals("run"))
+					run = Integer.parseInt(value);
+				else if (name.equals("devices"))
+					devices = Integer.parseInt(value);
+				else if (name.equals("time"))
+					time = Long.parseLong(value);
+				else if (name.equals("completed"))
+					completed = Long.parseLong(value);
+				else if (name.equals("timeouts"))
+					timeouts = Long.parseLong(value);
+				else if (name.equals("latencies"))
+					latencies = LatencyHistogram.decode(value);
+				// ignore unknown fields of newer slaves
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed result: " + line, e);
+		}
+		return new RunResult(run, devices, time, completed, timeouts, latencies);
+	}
+
+	/**
+	 * Formats the result as header and value line in the format of the log
+	 * file.
+	 * 
+	 * @param unit unit of the latencies
+	 * @return formatted result
+	 */
+	public String format(LatencyUnit unit) {
+		if (latencies.isEmpty())
+			return String.format("slaves=%d, d=%d, t=%.3f, received=%d, timeouts=%d, throughput=%.2f",
+					slaves, devices, time / 1000f, completed, timeouts, throughput);
+		return String.format("Slaves, Timeouts, Concurrency, Time, Completed, Throughput | 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(%s)%n"
+				+ "%d, %d, %d, %.3f, %d, %.2f | %s",
+				unit.getSymbol(), slaves, timeouts, devices, time / 1000f, completed, throughput,
+				latencies.formatPercentiles(unit));
+	}
+
+	/**
+	 * Formats the result as JSON object. The latencies are only included, if
+	 * measured.
+	 * 
+	 * @param unit unit of the latencies
+	 * @return JSON object
+	 */
+	public String formatJson(LatencyUnit unit) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"run\":").append(run);
+		json.append(",\"slaves\":").append(slaves);
+		json.append(",\"devices\":").append(devices);
+		json.append(",\"time\":").append(String.format(Locale.ROOT, "%.3f", time / 1000f));
+		json.append(",\"completed\":").append(completed);
+		json.append(",\"timeouts\":").append(timeouts);
+		json.append(",\"throughput\":").append(String.format(Locale.ROOT, "%.2f", throughput));
+		if (!latencies.isEmpty()) {
+			json.append(",\"unit\":\"").append(unit.getSymbol()).append('"');
+			json.append(",\"p50\":").append(unit.format(latencies.getValueAtPercentile(50)));
+			json.append(",\"p90\":").append(unit.format(latencies.getValueAtPercentile(90)));
+			json.append(",\"p99\":").append(unit.format(latencies.getValueAtPercentile(99)));
+			json.append(",\"max\":").append(unit.format(latencies.getMaxValue()));
+			json.append(",\"stdev\":").append(unit.format(latencies.getStdDeviation()));
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * Escapes a string for a JSON string literal.
+	 * 
+	 * @param value string
+	 * @return string with quotes, backslashes and control characters escaped
+	 */
+	public static String escapeJson(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				escaped.append('\\').append(c);
+			else if (c < 0x20)
+				escaped.append(String.format("\\u%04x", (int) c));
+			else
+				escaped.append(c);
+		}
+		return escaped.toString();
+	}
+
+	public int getRun() {
+		return run;
+	}
+
+	public int getSlaves() {
+		return slaves;
+	}
+
+	public int getDevices() {
+		return devices;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public long getCompleted() {
+		return completed;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A benchmark scenario for the master to run unattended. A scenario is read
+ * from a file with one statement per line. Settings apply to all following
+ * stages, each stage becomes one or more master commands:
+ * <pre>
+ * # wait up to 120 s until 4 slaves are connected
+ * slaves 4 120
+ * # settings
+ * target coap://10.0.0.1:5683/benchmark
+ * options -latency -window 8
+ * start 500
+ * # stages
+ * bench 100 60
+ * ramp 100 500 100 30 -rate 20000
+ * observe 200 60 coap://10.0.0.1:5683/announce -non -notify-rate 100
+ * pause 10
+ * </pre>
+ * <ul>
+ * <li>{@code slaves COUNT [TIMEOUT]} waits until COUNT slaves are connected,
+ * for at most TIMEOUT seconds (default 60).</li>
+ * <li>{@code target URI} sets the target of the following bench stages.</li>
+ * <li>{@code options OPTIONS} sets the options of the following bench
+ * stages.</li>
+ * <li>{@code start DELAY} starts the following stages on all slaves at the
+ * same time, DELAY ms after the clock synchronization, 0 to disable.</li>
+ * <li>{@code bench CLIENTS TIME [OPTIONS]} runs CLIENTS clients per slave for
+ * TIME seconds.</li>
+ * <li>{@code ramp FROM TO STEP TIME [OPTIONS]} runs FROM, FROM + STEP, ..., TO
+ * clients per slave for TIME seconds each.</li>
+ * <li>{@code observe SERVERS TIME URI [OPTIONS]} runs SERVERS observe servers
+ * per slave for TIME seconds, announcing them at URI.</li>
+ * <li>{@code pause TIME} waits TIME seconds.</li>
+ * </ul>
+ * Empty lines and lines starting with # are ignored.
+ */
+public class Scenario {
+
+	public static final int DEFAULT_SLAVE_TIMEOUT = 60; // s
+
+	private final String name;
+	private final int slaves;
+	private final int slaveTimeout;
+	private final List<Step> steps;
+
+	public Scenario(String name, int slaves, int slaveTimeout, List<Step> steps) {
+		if (steps.isEmpty())
+			throw new IllegalArgumentException("Scenario " + name + " has no stages");
+		this.name = name;
+		this.slaves = slaves;
+		this.slaveTimeout = slaveTimeout;
+		this.steps = Collections.unmodifiableList(new ArrayList<Step>(steps));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of slaves to wait for, 0 to start with the connected
+	 *         slaves
+	 */
+	public int getSlaves() {
+		return slaves;
+	}
+
+	/**
+	 * @return time to wait for the slaves in seconds
+	 */
+	public int getSlaveTimeout() {
+		return slaveTimeout;
+	}
+
+	public List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Reads a scenario from a file.
+	 * 
+	 * @param file name of the file
+	 * @return the scenario
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	public static Scenario read(String file) throws IOException {
+		List<Step> steps = new ArrayList<Step>();
+		int slaves = 0;
+		int slaveTimeout = DEFAULT_SLAVE_TIMEOUT;
+		String target = null;
+		String options = "";
+		int delay = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("\\s+");
+				String keyword = parts[0];
+				try {
+					if (keyword.equals("slaves")) {
+						expect(parts, 2, 3, "slaves COUNT [TIMEOUT]");
+						slaves = positive(parts[1]);
+						if (parts.length == 3)
+							slaveTimeout = positive(parts[2]);
+					} else if (keyword.equals("target")) {
+						expect(parts, 2, 2, "target URI");
+						target = parts[1];
+					} else if (keyword.equals("options")) {
+						options = rest(parts, 1);
+					} else if (keyword.equals("start")) {
+						expect(parts, 2, 2, "start DELAY");
+						delay = Integer.parseInt(parts[1]);
+						if (delay < 0)
+							throw new IllegalArgumentException("Delay must not be negative, but is " + delay);
+					} else if (keyword.equals("bench")) {
+						expect(parts, 3, Integer.MAX_VALUE, "bench CLIENTS TIME [OPTIONS]");
+						requireTarget(target);
+						int time = positive(parts[2]);
+						steps.add(bench(keyword, positive(parts[1]), time, delay, options, rest(parts, 3), target));
+					} else if (keyword.equals("ramp")) {
+						expect(parts, 5, Integer.MAX_VALUE, "ramp FROM TO STEP TIME [OPTIONS]");
+						requireTarget(target);
+						int from = positive(parts[1]);
+						int to = positive(parts[2]);
+						int step = positive(parts[3]);
+						int time = positive(parts[4]);
+						if (to < from)
+							throw new IllegalArgumentException("Ramp must not go down from " + from + " to " + to);
+						for (int clients = from; clients <= to; clients += step)
+							steps.add(bench(keyword, clients, time, delay, options, rest(parts, 5), target));
+					} else if (keyword.equals("observe")) {
+						expect(parts, 4, Integer.MAX_VALUE, "observe SERVERS TIME URI [OPTIONS]");
+						int time = positive(parts[2]);
+						steps.add(new Step(keyword, join("observe -s " + positive(parts[1]) + " -t " + time, parts[3],
+								delay > 0 ? "-at " + delay : "", rest(parts, 4)), time));
+					} else if (keyword.equals("pause")) {
+						expect(parts, 2, 2, "pause TIME");
+						steps.add(new Step(keyword, null, positive(parts[1])));
+					} else {
+						throw new IllegalArgumentException("Unknown statement " + keyword);
+					}
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + ":" + number + ": " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return new Scenario(file, slaves, slaveTimeout, steps);
+	}
+
+	/*
+	 * The target follows the time, because a flag without value directly
+	 * before it would take it as value.
+	 */
+	private static Step bench(String stage, int clients, int time, int delay, String options, String extra, String target) {
+		return new Step(stage, join("bench -c " + clients + " -t " + time, target, delay > 0 ? "-at " + delay : "", options, extra), time);
+	}
+
+	private static void expect(String[] parts, int min, int max, String syntax) {
+		if (parts.length < min || parts.length > max)
+			throw new IllegalArgumentException("expected \"" + syntax + "\"");
+	}
+
+	private static void requireTarget(String target) {
+		if (target == null)
+			throw new IllegalArgumentException("No target set before the stage");
+	}
+
+	private static int positive(String value) {
+		int number = Integer.parseInt(value);
+		if (number < 1)
+			throw new IllegalArgumentException("Value must be positive, but is " + number);
+		return number;
+	}
+
+	private static String rest(String[] parts, int from) {
+		StringBuilder rest = new StringBuilder();
+		for (int i = from; i < parts.length; i++)
+			rest.append(rest.length() == 0 ? "" : " ").append(parts[i]);
+		return rest.toString();
+	}
+
+	private static String join(String... parts) {
+		StringBuilder line = new StringBuilder();
+		for (String part : parts)
+			if (!part.isEmpty())
+				line.append(line.length() == 0 ? "" : " ").append(part);
+		return line.toString();
+	}
+
+	/**
+	 * A step of a stage, a line of master commands or a pause.
+	 */
+	public static class Step {
+
+		private final String stage;
+		private final String line;
+		private final int time;
+
+		public Step(String stage, String line, int time) {
+			this.stage = stage;
+			this.line = line;
+			this.time = time;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		/**
+		 * @return line of master commands, or null for a pause
+		 */
+		public String getLine() {
+			return line;
+		}
+
+		/**
+		 * @return duration in seconds
+		 */
+		public int getTime() {
+			return time;
+		}
+
+		@Override
+		public String toString() {
+			return stage + ": " + (line == null ? "pause " + time + " s" : line);
+		}
+	}
+}
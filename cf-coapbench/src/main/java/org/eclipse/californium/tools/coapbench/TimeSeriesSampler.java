@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+
+/**
+ * Samples the counters and latencies of the virtual devices periodically
+ * while a benchmark runs. Each sample reports the completed requests,
+ * throughput, timeouts and latency percentiles of the last interval, so
+ * warm-up, GC pauses or a collapsing throughput become visible. The devices
+ * are not locked, their counters are read while they keep running.
+ */
+public class TimeSeriesSampler extends TimerTask {
+
+	private final List<VirtualDevice> devices;
+	private final LogFile log;
+	private final TimeSeriesWriter writer;
+	private final LatencyUnit unit;
+	private final long begin;
+
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final LatencyHistogram previous = new LatencyHistogram();
+	private final LatencyHistogram interval = new LatencyHistogram();
+
+	private long last;
+	private int lastCount;
+	private int lastTimeouts;
+
+	/**
+	 * Creates a sampler.
+	 * 
+	 * @param devices devices of the run
+	 * @param log log file for the samples
+	 * @param writer writer for the samples, or {@code null}
+	 * @param unit unit of the latencies
+	 */
+	public TimeSeriesSampler(List<? extends VirtualDevice> devices, LogFile log, TimeSeriesWriter writer, LatencyUnit unit) {
+		this.devices = new ArrayList<VirtualDevice>(devices);
+		this.log = log;
+		this.writer = writer;
+		this.unit = unit;
+		this.begin = System.nanoTime();
+		this.last = begin;
+		log.format("Interval end (s), Completed, Throughput, Timeouts | 50%%, 90%%, 99%%, 100%% (%s)\n", unit.getSymbol());
+	}
+
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		int count = 0;
+		int timeouts = 0;
+		boolean latency = false;
+		total.clear();
+		for (VirtualDevice device : devices) {
+			count += device.getCount();
+			timeouts += device.getTimeouts();
+			LatencyHistogram latencies = device.getLatencies();
+			if (latencies != null) {
+				total.add(latencies);
+				latency = true;
+			}
+		}
+		interval.set(total);
+		interval.subtract(previous);
+		previous.set(total);
+
+		double elapsed = (now - begin) / 1000000000d;
+		double dt = (now - last) / 1000000000d;
+		int completed = count - lastCount;
+		int lost = timeouts - lastTimeouts;
+		double throughput = dt > 0 ? completed / dt : 0;
+		last = now;
+		lastCount = count;
+		lastTimeouts = timeouts;
+
+		if (latency && !interval.isEmpty()) {
+			log.format("%.3f, %d, %.2f, %d | %s, %s, %s, %s\n", elapsed, completed, throughput, lost,
+					unit.format(interval.getValueAtPercentile(50)), unit.format(interval.getValueAtPercentile(90)),
+					unit.format(interval.getValueAtPercentile(99)), unit.format(interval.getMaxValue()));
+		} else {
+			log.format("%.3f, %d, %.2f, %d\n", elapsed, completed, throughput, lost);
+		}
+		if (writer != null)
+			writer.write(System.currentTimeMillis(), elapsed, completed, throughput, lost, latency ? interval : null, unit);
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the samples of a {@link TimeSeriesSampler} into a {@link ResultSink},
+ * one record per sample. The latencies are written as numbers in the latency
+ * unit.
+ */
+public class TimeSeriesWriter {
+
+	private static final String[] COLUMNS = { "time", "elapsed", "completed", "throughput", "timeouts",
+			"p50", "p90", "p99", "max" };
+
+	private final ResultSink sink;
+
+	/**
+	 * Creates a writer.
+	 * 
+	 * @param name name of the file without extension
+	 * @param format format of the file
+	 * @param metadata metadata written at the beginning of the file
+	 * @throws IOException if the file cannot be created
+	 */
+	public TimeSeriesWriter(String name, ResultSink.Format format, Map<String, ?> metadata) throws IOException {
+		this.sink = new ResultSink(name, format, COLUMNS);
+		sink.metadata(metadata);
+	}
+
+	/**
+	 * Writes the metadata of a run before its samples.
+	 * 
+	 * @param run run id, or 0
+	 * @param concurrency number of virtual devices
+	 * @param duration duration of the run in milliseconds
+	 * @param unit unit of the latencies
+	 */
+	public void begin(int run, int concurrency, int duration, LatencyUnit unit) {
+		Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+		metadata.put("run", run);
+		metadata.put("concurrency", concurrency);
+		metadata.put("duration", duration);
+		metadata.put("unit", unit.getSymbol());
+		sink.metadata(metadata);
+	}
+
+	/**
+	 * Writes a sample.
+	 * 
+	 * @param time wall clock time of the sample in milliseconds
+	 * @param elapsed time since the start of the run in seconds
+	 * @param completed completed requests in the interval
+	 * @param throughput completed requests per second in the interval
+	 * @param timeouts timeouts in the interval
+	 * @param latencies latencies of the interval, {@code null}, if not
+	 *            measured
+	 * @param unit unit of the latencies
+	 */
+	public void write(long time, double elapsed, int completed, double throughput, int timeouts,
+			LatencyHistogram latencies, LatencyUnit unit) {
+		Double p50 = null, p90 = null, p99 = null, max = null;
+		if (latencies != null && !latencies.isEmpty()) {
+			p50 = unit.fromMicros(latencies.getValueAtPercentile(50));
+			p90 = unit.fromMicros(latencies.getValueAtPercentile(90));
+			p99 = unit.fromMicros(latencies.getValueAtPercentile(99));
+			max = unit.fromMicros(latencies.getMaxValue());
+		}
+		sink.write(time, elapsed, completed, throughput, timeouts, p50, p90, p99, max);
+	}
+
+	/**
+	 * Waits until the written samples are in the file.
+	 */
+	public void flush() {
+		sink.flush();
+	}
+
+	public void close() {
+		sink.close();
+	}
+}
@@ -24,48 +24,76 @@ import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.tools.coapbench.producer.RequestProducer;
+import org.eclipse.californium.tools.coapbench.producer.TokenMessageProducer;
 import org.eclipse.californium.tools.coapbench.producer.VeryEcoMessageProducer;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMixProducer;
 
 /**
  * A virtual client sends request to the server as fast as it can handle them.
+ * By default, a virtual client has only one request in flight. With a window
+ * larger than one, the client is pipelined: it keeps up to window requests
+ * outstanding and a separate receiver thread matches the responses by MID.
+ * With a {@link #setSchedule(long, long) schedule}, the client sends its
+ * requests at a constant rate instead.
  */
-public class VirtualClient implements Runnable, VirtualDevice {
+public class VirtualClient implements Runnable, VirtualClientDevice {
 
 	public static final int TIMEOUT = 10000;
+	// the window expires the requests, the receiver only polls for stop
+	private static final int RECEIVE_POLL = 100;
+	// longer responses are truncated, as by the NIO engine
+	private static final int RECEIVE_BUFFER_SIZE = NioClientEngine.RECEIVE_BUFFER_SIZE;
 	
 	private DatagramSocket socket;
 	private DatagramPacket pSend;
 	private DatagramPacket pRecv;
-	private VeryEcoMessageProducer producer;
+	private ByteBuffer received;
+	private RequestProducer producer;
 	
 	private boolean runnable;
-	private int counter;
-	private int lost;
+	// written by a single thread each, read by the sampler
+	private volatile int counter;
+	private volatile int lost;
 	
+	private URI uri;
 	private InetAddress destAddress;
 	private int destPort;
-	private byte[] mid;
+	private int tokenLength;
+	private WorkloadMix mix;
+	private int key; // MID or token of the outstanding request
 	private long timestamp;
 	
-	private ArrayList<Integer> latencies;
+	private LatencyHistogram latencies;
+	
+	private int window = 1;
+	// released by stop() from another thread
+	private volatile RequestWindow outstanding;
+	private boolean virtualThreads;
+	
+	private long start;
+	private long interval;
+	private long nextIntended;
 	
 	private boolean checkMID = true;
-	private boolean checkCode = true;
 	private boolean checkLatency = false;
+	private ResponseValidator validator;
+	private final ResponseStats stats = new ResponseStats();
 	
 	public VirtualClient(URI uri) throws Exception {
 		this(uri, null);
 	}
 	
 	public VirtualClient(URI uri, InetSocketAddress addr) throws Exception {
-		this.mid = new byte[2];
-		this.latencies = new ArrayList<Integer>();
 		this.producer = new VeryEcoMessageProducer();
 		this.pSend = new DatagramPacket(new byte[0], 0);
-		this.pRecv = new DatagramPacket(new byte[100], 100);
+		this.pRecv = new DatagramPacket(new byte[RECEIVE_BUFFER_SIZE], RECEIVE_BUFFER_SIZE);
+		this.received = ByteBuffer.wrap(pRecv.getData());
 		this.runnable = true;
 		setURI(uri);
 		bind(addr);
@@ -85,23 +113,126 @@ public class VirtualClient implements Runnable, VirtualDevice {
 			destPort = 5683;
 		else destPort = uri.getPort();
 		producer.setURI(uri);
+		this.uri = uri;
 	}
 	
 	public void run() {
 		try {
-			latencies.clear();
-			while (runnable) {
-				sendRequest();
-				receiveResponse();
+			if (latencies != null)
+				latencies.clear();
+			nextIntended = start;
+			if (window > 1) {
+				runPipelined();
+			} else if (interval > 0) {
+				while (runnable) {
+					awaitIntended();
+					sendRequest();
+					// measure from the intended time to include the delay
+					timestamp = nextIntended;
+					nextIntended += interval;
+					receiveResponse();
+				}
+			} else {
+				while (runnable) {
+					sendRequest();
+					receiveResponse();
+				}
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			// a stopped client blocked in receive is closed, when it is replaced
+			if (runnable)
+				e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * The calling thread sends requests as long as the window has room for
+	 * them, while a receiver thread removes the answered requests from the
+	 * window. If the window stays full for longer than the timeout, the
+	 * outstanding requests are considered lost.
+	 */
+	private void runPipelined() throws IOException, InterruptedException {
+		if (outstanding == null || outstanding.getSize() != window)
+			outstanding = new RequestWindow(window);
+		else
+			outstanding.clear();
+		socket.setSoTimeout(RECEIVE_POLL);
+		Thread receiver = DeviceThreads.newThread(new Runnable() {
+			public void run() {
+				receivePipelined();
+			} }, "VirtualClient-Receiver", virtualThreads);
+		receiver.start();
+		try {
+			pSend.setAddress(destAddress);
+			pSend.setPort(destPort);
+			while (runnable) {
+				if (!outstanding.await(TIMEOUT)) {
+					if (runnable)
+						lost += outstanding.expire(System.nanoTime(), TIMEOUT * 1000000L);
+					continue;
+				}
+				long intended;
+				if (interval > 0) {
+					awaitIntended();
+					intended = nextIntended;
+					nextIntended += interval;
+				} else {
+					intended = System.nanoTime();
+				}
+				byte[] bytes = producer.next();
+				pSend.setData(bytes);
+				lost += outstanding.add(getKey(bytes), intended);
+				socket.send(pSend);
+			}
+		} finally {
+			receiver.join();
+			socket.setSoTimeout(TIMEOUT);
+		}
+	}
+	
+	private void receivePipelined() {
+		try {
+			while (runnable) {
+				try {
+					pRecv.setLength(RECEIVE_BUFFER_SIZE);
+					socket.receive(pRecv);
+				} catch (SocketTimeoutException e) {
+					continue;
+				}
+				long now = System.nanoTime();
+				if (RawCoap.isMalformed(received, pRecv.getLength())) {
+					stats.record(ResponseStats.Outcome.MALFORMED);
+					continue;
+				}
+				int key = getKey(pRecv.getData());
+				long sent = key < 0 ? -1 : outstanding.remove(key);
+				if (sent < 0)
+					continue; // duplicate or already expired
+				if (!checkResponse(pRecv.getLength()))
+					continue;
+				if (checkLatency)
+					latencies.recordNanos(now - sent);
+				counter++;
+			}
+		} catch (IOException e) {
+			if (runnable)
+				e.printStackTrace();
 		}
 	}
 	
+	/*
+	 * Waits until the intended time of the next request. If the client is
+	 * behind its schedule, it returns immediately.
+	 */
+	private void awaitIntended() {
+		long delay;
+		while (runnable && (delay = nextIntended - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+	}
+	
 	public void sendRequest() throws IOException {
 		byte[] bytes = producer.next();
-		saveMID(bytes);
+		key = getKey(bytes);
 		pSend.setData(bytes);
 		pSend.setAddress(destAddress);
 		pSend.setPort(destPort);
@@ -111,17 +242,16 @@ public class VirtualClient implements Runnable, VirtualDevice {
 	
 	public void receiveResponse() throws IOException {
 		try {
-			boolean mid_correct;
 			long latency;
 			do {
+				pRecv.setLength(RECEIVE_BUFFER_SIZE);
 				socket.receive(pRecv);
 				latency = System.nanoTime() - timestamp;
-				byte[] resp = pRecv.getData();
-				mid_correct = checkMID(resp);
-				checkCode(resp);
-			} while (!mid_correct);
+			} while (!checkKey(pRecv.getLength()));
+			if (!checkResponse(pRecv.getLength()))
+				return;
 			if (checkLatency)
-				latencies.add((int) (latency / 1000000));
+				latencies.recordNanos(latency);
 			counter++;
 		} catch (SocketTimeoutException e) {
 //			System.out.println("Timeout occured");
@@ -136,12 +266,16 @@ public class VirtualClient implements Runnable, VirtualDevice {
 	
 	public void stop() {
 		runnable = false;
+		RequestWindow window = outstanding;
+		if (window != null)
+			window.release();
 	}
 	
 	public void reset() {
 		runnable = true;
 		counter = 0;
 		lost = 0;
+		stats.clear();
 	}
 	
 	public int getCount() {
@@ -152,32 +286,148 @@ public class VirtualClient implements Runnable, VirtualDevice {
 		return lost;
 	}
 	
-	public ArrayList<Integer> getLatencies() {
+	/**
+	 * Gets the latencies of the responses.
+	 * 
+	 * @return histogram of the latencies, or {@code null}, if latencies are
+	 *         not measured
+	 */
+	public LatencyHistogram getLatencies() {
 		return latencies;
 	}
 	
-	private void saveMID(byte[] bytes) {
-		mid[0] = bytes[2];
-		mid[1] = bytes[3];
+	@Override
+	public void setSchedule(long start, long interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("Interval must not be negative, but is " + interval);
+		this.start = start;
+		this.interval = interval;
+	}
+	
+	@Override
+	public int getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Sets the number of requests the client keeps in flight. A window of 1
+	 * (default) sends the next request only after the response or timeout of
+	 * the previous one.
+	 * 
+	 * @param window number of outstanding requests
+	 */
+	@Override
+	public void setWindow(int window) {
+		RequestWindow.checkSize(window, tokenLength);
+		this.window = window;
 	}
 	
-	private boolean checkMID(byte[] bytes) {
-		int expected = ( ((mid[0] & 0xFF)<<8) + (mid[1] & 0xFF));
-		int actual = ( ((bytes[2] & 0xFF)<<8) + (bytes[3] & 0xFF));
-		if (checkMID && 
-				(bytes[2] != mid[0] || bytes[3]!=mid[1]) ) {
-			System.err.println("Received message with wrong MID, expected "+expected+ " but received "+actual);
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * Sets, whether the receiver thread of a pipelined client is a virtual
+	 * thread.
+	 * 
+	 * @param virtualThreads {@code true} to use a virtual thread
+	 * @see DeviceThreads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	public int getTokenLength() {
+		return tokenLength;
+	}
+	
+	/**
+	 * Sets the length of the token of the requests. With a token, the
+	 * responses are matched by token instead of by MID.
+	 * 
+	 * @param tokenLength token length in bytes, or 0 for no token
+	 * @see TokenMessageProducer
+	 */
+	@Override
+	public void setTokenLength(int tokenLength) {
+		if (tokenLength == this.tokenLength)
+			return;
+		RequestWindow.checkSize(window, tokenLength);
+		this.tokenLength = tokenLength;
+		updateProducer();
+	}
+
+	public WorkloadMix getWorkloadMix() {
+		return mix;
+	}
+
+	/**
+	 * Sets a workload mix. The client then sends the requests of the mix
+	 * instead of GET requests to its URI and accepts all 2.xx responses.
+	 * 
+	 * @param mix workload mix, or {@code null} for GET requests only
+	 * @see WorkloadMixProducer
+	 */
+	@Override
+	public void setWorkloadMix(WorkloadMix mix) {
+		if (mix == this.mix)
+			return;
+		this.mix = mix;
+		updateProducer();
+	}
+
+	private void updateProducer() {
+		if (mix != null)
+			producer = new WorkloadMixProducer(mix, tokenLength, uri);
+		else if (tokenLength > 0)
+			producer = new TokenMessageProducer(tokenLength, uri);
+		else
+			producer = new VeryEcoMessageProducer(uri);
+	}
+	
+	private static int getMID(byte[] bytes) {
+		return ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+	
+	/*
+	 * Gets the MID of a message, or the key of its token if tokens are used.
+	 */
+	private int getKey(byte[] bytes) {
+		return tokenLength == 0 ? getMID(bytes) : TokenMessageProducer.getKey(bytes, tokenLength);
+	}
+	
+	private boolean checkKey(int length) {
+		if (RawCoap.isMalformed(received, length)) {
+			stats.record(ResponseStats.Outcome.MALFORMED);
+			return false;
+		}
+		if (checkMID && getKey(pRecv.getData()) != key) {
+			// a late response of an earlier request
+			stats.record(tokenLength == 0 ? ResponseStats.Outcome.MID : ResponseStats.Outcome.TOKEN);
 			return false;
 		}
 		return true;
 	}
 	
-	private void checkCode(byte[] bytes) {
-		int c = 0xFF & bytes[1];
-		if (checkCode && c != CoAP.ResponseCode.CONTENT.value) {
-			System.err.println("Wrong response code: " + CoAP.ResponseCode.valueOf(c));
-			System.exit(-1);
-		}
+	private boolean checkResponse(int length) {
+		if (validator != null)
+			return validator.validate(received, length, stats);
+		int c = 0xFF & received.get(1);
+		// a mix also has POST, PUT and DELETE requests, so accept all success codes
+		if (mix == null ? c == CoAP.ResponseCode.CONTENT.value : (c >>> 5) == 2)
+			return true;
+		stats.recordCode(c);
+		return false;
+	}
+	
+	@Override
+	public void setResponseValidator(ResponseValidator validator) {
+		this.validator = validator;
+	}
+	
+	@Override
+	public ResponseStats getResponseStats() {
+		return stats;
 	}
 
 	public boolean isCheckLatency() {
@@ -185,6 +435,9 @@ public class VirtualClient implements Runnable, VirtualDevice {
 	}
 
 	public void setCheckLatency(boolean checkLatency) {
+		// allocate the histogram only if required, it takes some kB per client
+		if (checkLatency && latencies == null)
+			latencies = new LatencyHistogram();
 		this.checkLatency = checkLatency;
 	}
 	
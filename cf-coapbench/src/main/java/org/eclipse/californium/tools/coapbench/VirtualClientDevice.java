@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+
+/**
+ * A virtual device that sends requests, i.e. a virtual client. Besides the
+ * common {@link VirtualDevice} settings, a client has a window of outstanding
+ * requests and an optional send schedule.
+ */
+public interface VirtualClientDevice extends VirtualDevice {
+
+	public int getWindow();
+	public void setWindow(int window);
+
+	/**
+	 * Sets the length of the rolling token of the requests. With a token, the
+	 * responses are matched by token instead of by MID, so the server has to
+	 * match the exchanges by token as for real clients.
+	 * 
+	 * @param tokenLength token length in bytes (1 to 8), or 0 for no token
+	 */
+	public void setTokenLength(int tokenLength);
+
+	/**
+	 * Sets a workload mix of requests to send instead of GET requests to the
+	 * URI of the client.
+	 * 
+	 * @param mix workload mix, or {@code null} for GET requests only
+	 */
+	public void setWorkloadMix(WorkloadMix mix);
+
+	/**
+	 * Sets the schedule for a constant request rate. The client sends its
+	 * requests at the intended times {@code start + k * interval} and measures
+	 * the latency from the intended time rather than from the actual send
+	 * time. A request, which cannot be sent in time because the previous
+	 * responses are still outstanding, is sent as soon as possible and its
+	 * latency contains the delay. This avoids the coordinated omission of
+	 * server stalls.
+	 * 
+	 * @param start intended time of the first request in nanoseconds of
+	 *            {@link System#nanoTime()}
+	 * @param interval interval between two requests in nanoseconds, or 0 to
+	 *            send the next request as soon as possible
+	 */
+	public void setSchedule(long start, long interval);
+
+	/**
+	 * Sets the validator of the responses. Rejected responses are counted in
+	 * the {@link #getResponseStats() response statistics} instead of the
+	 * completed requests.
+	 * 
+	 * @param validator validator, or {@code null} to only check the response
+	 *            code (2.05, or any 2.xx with a workload mix)
+	 */
+	public void setResponseValidator(ResponseValidator validator);
+
+	/**
+	 * Gets the rejected responses of the current run.
+	 * 
+	 * @return statistics of the rejected responses
+	 */
+	public ResponseStats getResponseStats();
+}
@@ -16,6 +16,7 @@
  ******************************************************************************/
 package org.eclipse.californium.tools.coapbench;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
@@ -24,6 +25,9 @@ import java.util.Arrays;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import org.eclipse.californium.tools.coapbench.producer.TokenMessageProducer;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
+
 /**
  * The VirtualClient manager creates the virtual clients for the benchmarks.
  * Each virtual client sends request to the server as fast as the server can
@@ -40,12 +44,24 @@ public class VirtualClientManager {
 
 	private long timestamp;
 	private int count;
-	private ArrayList<VirtualClient> clients;
+	private ArrayList<VirtualDevice> clients;
 	
 	private LogFile log;
 	
 	private boolean enableLatency = false;
+	private LatencyUnit latencyUnit = LatencyUnit.MILLISECONDS;
 	private boolean verbose;
+	private int window = 1;
+	private int tokenLength;
+	private WorkloadMix mix;
+	private int rate = 0;
+	private int sampleInterval = 0;
+	private ResultSink.Format seriesFormat;
+	private TimeSeriesWriter seriesWriter;
+	private TimeSeriesSampler sampler;
+	private boolean nio = false;
+	private boolean virtualThreads = false;
+	private NioClientEngine engine;
 
 	public VirtualClientManager() throws Exception {
 		this(null);
@@ -58,7 +74,7 @@ public class VirtualClientManager {
 	public VirtualClientManager(URI uri, InetSocketAddress bindAddr) throws Exception {
 		this.uri = uri;
 		this.bindAddr = bindAddr;
-		this.clients = new ArrayList<VirtualClient>();
+		this.clients = new ArrayList<VirtualDevice>();
 		this.timer = new Timer();
 	}
 	
@@ -78,9 +94,23 @@ public class VirtualClientManager {
 	public void log(String entry) throws Exception {
 		ensurelog();
 		log.println(entry);
+		log.flush();
+	}
+	
+	/**
+	 * Closes the log file, e.g., before the process exits. A later entry
+	 * opens a new log file.
+	 */
+	public void closeLog() {
+		if (log != null) {
+			log.close();
+			log = null;
+		}
 	}
 	
 	public void lognew(String name) throws Exception {
+		if (this.log != null)
+			this.log.close();
 		this.log = new LogFile(LOG_FILE + "_" + name);
 		this.log.setVerbose(verbose);
 	}
@@ -88,19 +118,36 @@ public class VirtualClientManager {
 	private void ensurelog() throws Exception {
 		if (log==null) {
 			log = new LogFile(LOG_FILE);
-			log.format("Timeouts, Concurrency, Time, Completed, Throughput | 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(ms)\n");
+			log.format("Timeouts, Concurrency, Time, Completed, Throughput | 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(%s)\n", latencyUnit.getSymbol());
 		}
 	}
 	
 	public void setClientCount(int c) throws Exception {
+		// the engine must not mix both kinds of clients
+		for (int i=clients.size()-1; i>=0; i--)
+			if (nio != (clients.get(i) instanceof NioVirtualClient))
+				clients.remove(i).close();
 		if (c < clients.size()) {
 			for (int i=clients.size()-1; i>=c; i--)
 				clients.remove(i).close(); // close and remove
 		} else {
 			for (int i=clients.size(); i<c; i++) {
-				VirtualClient vc = new VirtualClient(uri, bindAddr);
-				vc.setCheckLatency(enableLatency);
-				clients.add(vc);
+				if (nio) {
+					NioVirtualClient vc = new NioVirtualClient(uri, bindAddr);
+					vc.setCheckLatency(enableLatency);
+					vc.setWindow(window);
+					vc.setTokenLength(tokenLength);
+					vc.setWorkloadMix(mix);
+					clients.add(vc);
+				} else {
+					VirtualClient vc = new VirtualClient(uri, bindAddr);
+					vc.setCheckLatency(enableLatency);
+					vc.setWindow(window);
+					vc.setTokenLength(tokenLength);
+					vc.setWorkloadMix(mix);
+					vc.setVirtualThreads(virtualThreads);
+					clients.add(vc);
+				}
 			}
 		}
 		this.count = c;
@@ -108,45 +155,65 @@ public class VirtualClientManager {
 	
 	public void setURI(URI uri) throws UnknownHostException {
 		this.uri = uri;
-		for (VirtualClient vc:clients)
+		for (VirtualDevice vc:clients)
 			vc.setURI(uri);
 	}
 	
 	public void start(int count, int time) throws Exception {
 		ensurelog();
 		setClientCount(count);
-		Thread[] threads = new Thread[count];
-		for (int i=0;i<count;i++) {
-			VirtualClient c = clients.get(i);
-			c.reset();
-			threads[i] = new Thread(c);
-		}
 		System.err.println("\nStart "+count+" virtual clients for "+time+" ms");
+		// with a rate, spread the intended times of the clients over the interval
+		long interval = rate > 0 ? count * 1000000000L / rate : 0;
+		long begin = System.nanoTime() + VirtualDeviceManager.SCHEDULE_DELAY * 1000000L;
 		for (int i=0;i<count;i++)
-			threads[i].start();
+			((VirtualClientDevice) clients.get(i)).setSchedule(begin + (long) ((double) interval * i / count), interval);
+		if (nio) {
+			ArrayList<NioVirtualClient> nioClients = new ArrayList<NioVirtualClient>(count);
+			for (int i=0;i<count;i++) {
+				NioVirtualClient c = (NioVirtualClient) clients.get(i);
+				c.reset();
+				nioClients.add(c);
+			}
+			if (engine == null)
+				engine = new NioClientEngine();
+			engine.start(nioClients);
+		} else {
+			Thread[] threads = new Thread[count];
+			for (int i=0;i<count;i++) {
+				VirtualClient c = (VirtualClient) clients.get(i);
+				c.reset();
+				threads[i] = DeviceThreads.newThread(c, "VirtualClient-" + i, virtualThreads);
+			}
+			for (int i=0;i<count;i++)
+				threads[i].start();
+		}
 		timestamp = System.nanoTime();
 		timer.schedule(new TimerTask() {
 			public void run() {
 				stop();
 			} }, time);
+		startSampler(count, time);
 	}
 	
 	public void stop() {
 		float dt = (System.nanoTime() - timestamp) / 1000000f;
+		stopSampler();
 		if (verbose)
 			System.out.println("Stop virtual clients and collect results");
-		for (VirtualClient vc:clients)
+		for (VirtualDevice vc:clients)
 			vc.stop();
+		if (engine != null)
+			engine.stop();
 		int sum = 0;
 		int sumTimeout = 0;
-		IntArray latencies = new IntArray();
+		LatencyHistogram latencies = new LatencyHistogram();
 		for (int i=0;i<clients.size();i++) {
-			VirtualClient client = clients.get(i);
+			VirtualDevice client = clients.get(i);
 			int count = client.getCount();
 			int lost = client.getTimeouts();
-			for (int lat : client.getLatencies()) {
-				latencies.add(lat);
-			}
+			if (client.getLatencies() != null)
+				latencies.add(client.getLatencies());
 			sum += count;
 			sumTimeout += lost;
 			if (verbose)
@@ -155,34 +222,18 @@ public class VirtualClientManager {
 		}
 		float throughput = (sum * 1000L) / dt;
 		
-		int[] lats = latencies.getArray();
-		long latsum = 0;
-		for (int l:lats) latsum += l;
-		double mean = (double) latsum / lats.length;
-		double temp = 0;
-        for(int l :lats) temp += (mean-l)*(mean-l);
-        double var = Math.sqrt(temp / lats.length);
-           
-        if (lats.length > 0) {
-        	Arrays.sort(lats); // bad if length==0
-			int q50 = lats[(int) (lats.length/2)];
-			int q66 = lats[(int) (lats.length * 2L/3)];
-			int q75 = lats[(int) (lats.length * 3L/4)];
-			int q80 = lats[(int) (lats.length * 4L/5)];
-			int q90 = lats[(int) (lats.length * 9L/10)];
-			int q95 = lats[(int) (lats.length * 19L/20)];
-			int q98 = lats[(int) (lats.length * 98L/100)];
-			int q99 = lats[(int) (lats.length * 99L/100)];
-			int q100 = lats[lats.length - 1];
-			
-			log.format("%d, %d, %.3f, %d, %.2f | %d, %d, %d, %d, %d, %d, %d, %d, %d, %.1f\n",
+        if (!latencies.isEmpty()) {
+			log.format("%d, %d, %.3f, %d, %.2f | %s\n",
 					sumTimeout, count, dt/1000f, sum, throughput,
-					q50, q66, q75, q80, q90, q95, q98, q99, q100, var);
+					latencies.formatPercentiles(latencyUnit));
         
         } else {
         	// no latency
         	log.format("c=%d, t=%.3f, received=%d, timeouts=%d, throughput=%.2f, uri=%s\n", count, dt/1000f, sum, sumTimeout, throughput, uri.toString());
         }
+		if (seriesWriter != null)
+			seriesWriter.flush();
+		log.flush();
 	}
 
 	public boolean isEnableLatency() {
@@ -192,6 +243,193 @@ public class VirtualClientManager {
 	public void setEnableLatency(boolean enableLatency) {
 		System.err.println("Measure latency: "+enableLatency);
 		this.enableLatency = enableLatency;
+		for (VirtualDevice vc:clients)
+			vc.setCheckLatency(enableLatency);
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of outstanding requests per virtual client.
+	 * 
+	 * @param window number of outstanding requests
+	 * @throws IllegalArgumentException if the window is too large for the
+	 *             token length
+	 * @see VirtualClient#setWindow(int)
+	 */
+	public void setWindow(int window) {
+		RequestWindow.checkSize(window, tokenLength);
+		System.err.println("Requests in flight per client: "+window);
+		for (VirtualDevice vc:clients)
+			((VirtualClientDevice) vc).setWindow(window);
+		this.window = window;
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * Sets the token length of the requests of the virtual clients.
+	 * 
+	 * @param tokenLength token length in bytes, or 0 for no token
+	 * @throws IllegalArgumentException if the token length is out of range or
+	 *             too short for the window
+	 * @see VirtualClientDevice#setTokenLength(int)
+	 */
+	public void setTokenLength(int tokenLength) {
+		if (tokenLength < 0 || tokenLength > TokenMessageProducer.MAX_TOKEN_LENGTH)
+			throw new IllegalArgumentException("Token length must be in [0, " + TokenMessageProducer.MAX_TOKEN_LENGTH + "], but is " + tokenLength);
+		RequestWindow.checkSize(window, tokenLength);
+		System.err.println("Token length: "+tokenLength);
+		for (VirtualDevice vd : clients)
+			if (vd instanceof VirtualClientDevice)
+				((VirtualClientDevice)vd).setTokenLength(tokenLength);
+		this.tokenLength = tokenLength;
+	}
+
+	public WorkloadMix getWorkloadMix() {
+		return mix;
+	}
+
+	/**
+	 * Sets the workload mix of the virtual clients.
+	 * 
+	 * @param mix workload mix, or {@code null} for GET requests only
+	 * @see VirtualClientDevice#setWorkloadMix(WorkloadMix)
+	 */
+	public void setWorkloadMix(WorkloadMix mix) {
+		if (mix != null)
+			System.err.println("Workload mix: "+mix);
+		for (VirtualDevice vd : clients)
+			if (vd instanceof VirtualClientDevice)
+				((VirtualClientDevice)vd).setWorkloadMix(mix);
+		this.mix = mix;
+	}
+
+	/*
+	 * Starts sampling the devices of the current run, if enabled.
+	 */
+	private void startSampler(int count, int time) throws IOException {
+		if (sampleInterval <= 0)
+			return;
+		if (seriesFormat != null && seriesWriter == null)
+			seriesWriter = new TimeSeriesWriter(LOG_FILE + "_series", seriesFormat, ResultSink.environment(uri));
+		if (seriesWriter != null)
+			seriesWriter.begin(0, count, time, latencyUnit);
+		sampler = new TimeSeriesSampler(clients.subList(0, count), log, seriesWriter, latencyUnit);
+		timer.scheduleAtFixedRate(sampler, sampleInterval, sampleInterval);
+	}
+
+	private void stopSampler() {
+		if (sampler != null) {
+			sampler.cancel();
+			sampler = null;
+		}
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Sets the interval in which the throughput, timeouts and latencies of
+	 * the running benchmark are logged.
+	 * 
+	 * @param sampleInterval interval in milliseconds, or 0 to log only the
+	 *            summary at the end of a run
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		if (sampleInterval < 0)
+			throw new IllegalArgumentException("Sample interval must not be negative, but is " + sampleInterval);
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Sets the format of the file, which the samples are additionally written
+	 * to.
+	 * 
+	 * @param seriesFormat format, or {@code null} to only log the samples
+	 * @see #setSampleInterval(int)
+	 */
+	public void setSeriesFormat(ResultSink.Format seriesFormat) {
+		if (seriesWriter != null && seriesFormat != this.seriesFormat) {
+			seriesWriter.close();
+			seriesWriter = null;
+		}
+		this.seriesFormat = seriesFormat;
+	}
+
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * Sets a constant rate for all clients together.
+	 * 
+	 * @param rate requests per second, or 0 to send as fast as possible
+	 * @see VirtualDeviceManager#setRate(int)
+	 */
+	public void setRate(int rate) {
+		if (rate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + rate);
+		System.err.println("Request rate: "+(rate == 0 ? "unlimited" : rate + "/s"));
+		this.rate = rate;
+	}
+
+	public boolean isNio() {
+		return nio;
+	}
+
+	/**
+	 * Sets, whether the virtual clients are driven by a {@link NioClientEngine}
+	 * with one selector loop per core instead of one thread per client. Takes
+	 * effect with the next start.
+	 * 
+	 * @param nio {@code true} to use the NIO engine
+	 */
+	public void setNio(boolean nio) {
+		System.err.println("Use NIO engine: "+nio);
+		this.nio = nio;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Sets, whether each virtual client runs on a virtual thread instead of a
+	 * platform thread. Requires Java 21, otherwise platform threads are used.
+	 * Takes effect with the next start.
+	 * 
+	 * @param virtualThreads {@code true} to use virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads && !DeviceThreads.isVirtualSupported()) {
+			System.err.println("Virtual threads are not supported by this Java runtime, use platform threads.");
+			virtualThreads = false;
+		}
+		System.err.println("Use virtual threads: "+virtualThreads);
+		this.virtualThreads = virtualThreads;
+		for (VirtualDevice vc : clients)
+			if (vc instanceof VirtualClient)
+				((VirtualClient) vc).setVirtualThreads(virtualThreads);
+	}
+
+	public LatencyUnit getLatencyUnit() {
+		return latencyUnit;
+	}
+
+	/**
+	 * Sets the unit in which the latency percentiles are logged. The
+	 * latencies are always recorded in microseconds.
+	 * 
+	 * @param latencyUnit unit for the log
+	 */
+	public void setLatencyUnit(LatencyUnit latencyUnit) {
+		this.latencyUnit = latencyUnit;
 	}
 
 	public boolean isVerbose() {
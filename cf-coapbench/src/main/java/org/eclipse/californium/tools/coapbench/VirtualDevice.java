@@ -20,7 +20,6 @@ package org.eclipse.californium.tools.coapbench;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
 
 public interface VirtualDevice {
 
@@ -32,7 +31,7 @@ public interface VirtualDevice {
 	
 	public int getCount();
 	public int getTimeouts();
-	public ArrayList<Integer> getLatencies();
+	public LatencyHistogram getLatencies();
 	
 	public boolean isRunning();
 	
@@ -16,21 +16,26 @@
  ******************************************************************************/
 package org.eclipse.californium.tools.coapbench;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.LockSupport;
 
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.CoapResponse;
 import org.eclipse.californium.core.config.CoapConfig;
 import org.eclipse.californium.elements.config.UdpConfig;
+import org.eclipse.californium.tools.coapbench.producer.TokenMessageProducer;
+import org.eclipse.californium.tools.coapbench.producer.WorkloadMix;
 
 /**
  * The VirtualClient manager creates the virtual clients for the benchmarks.
@@ -40,6 +45,16 @@ import org.eclipse.californium.elements.config.UdpConfig;
 public class VirtualDeviceManager {
 
 	public static final String LOG_FILE = "coapbench";
+	public static final int DEFAULT_PAUSE = 5000; // ms
+	private static final int RESULT_TIMEOUT = 30000; // ms
+	private static final int REUSE_GRACE = 1000; // ms
+	
+	private static final double[] RESULT_PERCENTILES = { 50, 66, 75, 80, 90, 95, 98, 99, 100 };
+	private static final String[] RESULT_COLUMNS = { "run", "concurrency", "time", "completed", "timeouts",
+			"throughput", "unit", "p50", "p66", "p75", "p80", "p90", "p95", "p98", "p99", "p100", "stdev" };
+	
+	/** Delay in milliseconds between the setup and the first scheduled request. */
+	public static final int SCHEDULE_DELAY = 100;
 	
 	static {
 		CoapConfig.register();
@@ -55,6 +70,7 @@ public class VirtualDeviceManager {
 	private int testlength;
 	private int count;
 	private boolean confirmable = true;
+	private boolean clients = true;
 	
 	private ArrayList<VirtualDevice> devices;
 	
@@ -63,7 +79,43 @@ public class VirtualDeviceManager {
 	private LogFile log;
 	
 	private boolean enableLatency = false;
+	private LatencyUnit latencyUnit = LatencyUnit.MILLISECONDS;
 	private boolean verbose;
+	private int window = 1;
+	private int tokenLength;
+	private WorkloadMix mix;
+	private int blockSize;
+	private int relations = 1;
+	private int senders = MultiObserverVirtualServer.DEFAULT_SENDERS;
+	private int relationRate;
+	private int notificationRate;
+	private int maxNotificationRate;
+	private NotificationPacer.Arrival arrival = NotificationPacer.Arrival.FIXED;
+	private int burst = NotificationPacer.DEFAULT_BURST;
+	private int uploadSize;
+	private byte[] httpBody;
+	private String expectedCode;
+	private int expectedFormat = -1;
+	private boolean checkPayload;
+	private String httpContentType;
+	private int rate = 0;
+	private int sampleInterval = 0;
+	private ResultSink.Format seriesFormat;
+	private TimeSeriesWriter seriesWriter;
+	private ResultSink.Format resultFormat;
+	private ResultSink resultSink;
+	private TimeSeriesSampler sampler;
+	private boolean nio = false;
+	private boolean virtualThreads = false;
+	private NioClientEngine engine;
+	private int run;
+	private long startTime;
+	private int pause = DEFAULT_PAUSE;
+	private String deviceKind;
+	private final ArrayList<Thread> deviceThreads = new ArrayList<Thread>();
+	private final Object runLock = new Object();
+	private RunResult lastResult;
+	private ResultListener resultListener;
 
 	public VirtualDeviceManager() throws Exception {
 		this(null);
@@ -87,20 +139,63 @@ public class VirtualDeviceManager {
 		log("Run series: "+Arrays.toString(cs).replace("[","").replace("]", ""));
 		
 		for (int i=0;i<n;i++) {
-			start(cs[i], time);
+			run(cs[i], time);
 			
-			if (i < n-1) // sleep between two runs
-				Thread.sleep(time + 5*1000);
-			else Thread.sleep(time + 1000);
+			if (i < n-1) // let the server settle between two runs
+				Thread.sleep(pause);
+		}
+	}
+	
+	/**
+	 * Runs the clients and waits for the result.
+	 * 
+	 * @param count number of clients
+	 * @param time duration in milliseconds
+	 * @return the result, or {@code null}, if the run did not complete in time
+	 * @throws Exception if the clients cannot be started
+	 */
+	public RunResult run(int count, int time) throws Exception {
+		synchronized (runLock) {
+			lastResult = null;
+		}
+		start(count, time);
+		// the results are collected some time after the end of the run
+		long deadline = System.nanoTime() + (time + RESULT_TIMEOUT) * 1000000L;
+		synchronized (runLock) {
+			long left;
+			while (lastResult == null && (left = deadline - System.nanoTime()) > 0)
+				runLock.wait(left / 1000000L + 1);
+			return lastResult;
 		}
 	}
 	
+	// entries and reports are rare, flush them, the runs only flush at the end
 	public void log(String entry) throws Exception {
 		ensurelog();
 		log.println(entry);
+		log.flush();
+	}
+	
+	public void format(String format, Object... args) throws Exception {
+		ensurelog();
+		log.format(format, args);
+		log.flush();
+	}
+	
+	/**
+	 * Closes the log file, e.g., before the process exits. A later entry
+	 * opens a new log file.
+	 */
+	public void closeLog() {
+		if (log != null) {
+			log.close();
+			log = null;
+		}
 	}
 	
 	public void lognew(String name) throws Exception {
+		if (this.log != null)
+			this.log.close();
 		this.log = new LogFile(LOG_FILE + "_" + name);
 		this.log.setVerbose(verbose);
 	}
@@ -111,32 +206,150 @@ public class VirtualDeviceManager {
 		}
 	}
 	
-	/* VirtualClients are created here. */
+	/*
+	 * VirtualClients are created here. The clients of the previous run are
+	 * kept with their sockets, packets and producers, only the difference
+	 * to the new count is created or closed. Servers are always created anew.
+	 */
 	public void setDeviceCount(int d, boolean clients) throws Exception {
-		VirtualDevice vd;
-		
+		if (clients && blockSize > 0 && (window > 1 || tokenLength > 0 || mix != null))
+			throw new IllegalArgumentException("Block-wise transfers do not support a window, tokens or a workload mix");
+		// an http target is benchmarked with the same method by HTTP clients
+		boolean http = clients && "http".equalsIgnoreCase(uri.getScheme());
+		if (http && (blockSize > 0 || tokenLength > 0 || mix != null))
+			throw new IllegalArgumentException("HTTP clients do not support block-wise transfers, tokens or a workload mix");
+
 		for (int i = devices.size() - 1; i >= 0; --i) {
 			if (devices.get(i).isRunning()) {
 				System.err.println ("[VDM] An inactive virtual device #" + i + " is still running; attempting a stop.");
 				devices.get(i).stop();
 			}
-			devices.remove(i).close(); // close and remove
 		}
-
-		for (int i=devices.size(); i<d; i++) {
-			if (clients)
-				vd = new VirtualClient(uri, bindAddr);
-			else
-				vd = new VirtualServer(uri, bindAddr, true, confirmable, barrier);
-			vd.setCheckLatency(enableLatency);
-			devices.add(vd);
+		String kind = clients ? getClientKind(http) : null;
+		if (kind == null || !kind.equals(deviceKind)) {
+			for (int i = devices.size() - 1; i >= 0; --i)
+				devices.remove(i).close(); // close and remove
+		} else {
+			while (devices.size() > d)
+				devices.remove(devices.size() - 1).close();
+			int replaced = replaceBlocked();
+			for (VirtualDevice vd : devices)
+				configure(vd);
+			if (!devices.isEmpty())
+				System.err.println("Reuse " + (devices.size() - replaced) + " virtual clients" + (replaced > 0 ? ", replaced " + replaced + " blocked ones" : ""));
 		}
+		deviceKind = kind;
+		deviceThreads.clear();
+		if (http && nio && d > devices.size())
+			System.err.println("HTTP clients do not support NIO, using threads");
+
+		for (int i=devices.size(); i<d; i++)
+			devices.add(createDevice(clients, http));
 
 		if (!clients)
 			for (VirtualDevice vs : devices)
-				((VirtualServer) vs).setBarrier(barrier);
+				if (vs instanceof MultiObserverVirtualServer)
+					((MultiObserverVirtualServer) vs).setBarrier(barrier);
+				else
+					((VirtualServer) vs).setBarrier(barrier);
 		this.count = d;
 	}
+
+	private VirtualDevice createDevice(boolean clients, boolean http) throws Exception {
+		VirtualDevice vd;
+		if (http) {
+			vd = new HttpVirtualClient(uri, bindAddr);
+		} else if (clients && blockSize > 0) {
+			vd = new BlockwiseVirtualClient(uri, bindAddr, blockSize, uploadSize);
+		} else if (clients && nio) {
+			vd = new NioVirtualClient(uri, bindAddr);
+		} else if (clients) {
+			vd = new VirtualClient(uri, bindAddr);
+		} else if (relations > 1) {
+			MultiObserverVirtualServer vs = new MultiObserverVirtualServer(uri, bindAddr, confirmable, barrier, relations);
+			vs.setSenders(senders);
+			vs.setRelationRate(relationRate);
+			vd = vs;
+		} else {
+			vd = new VirtualServer(uri, bindAddr, true, confirmable, barrier);
+		}
+		configure(vd);
+		return vd;
+	}
+
+	/*
+	 * Applies the settings, which may change between runs, to a client.
+	 */
+	private void configure(VirtualDevice vd) {
+		if (vd instanceof HttpVirtualClient) {
+			((HttpVirtualClient) vd).setWindow(window);
+			((HttpVirtualClient) vd).setBody(httpBody, httpContentType);
+		} else if (vd instanceof NioVirtualClient || vd instanceof VirtualClient) {
+			VirtualClientDevice vc = (VirtualClientDevice) vd;
+			configureWindow(vc);
+			vc.setWorkloadMix(mix);
+			vc.setResponseValidator(newValidator());
+			if (vd instanceof VirtualClient)
+				((VirtualClient) vd).setVirtualThreads(virtualThreads);
+		}
+		vd.setCheckLatency(enableLatency);
+	}
+
+	/*
+	 * Creates the validators of a client. The payload validator keeps the hash
+	 * of the first payload, so each client needs its own.
+	 */
+	private ResponseValidator newValidator() {
+		if (expectedCode == null && expectedFormat < 0 && !checkPayload)
+			return null; // the default check of the clients
+		ArrayList<ResponseValidator> validators = new ArrayList<ResponseValidator>();
+		String code = expectedCode != null ? expectedCode : mix == null ? "2.05" : "2.xx";
+		if (!"any".equals(code))
+			validators.add(new ResponseValidator.Code(code));
+		if (expectedFormat >= 0)
+			validators.add(new ResponseValidator.ContentFormat(expectedFormat));
+		if (checkPayload)
+			validators.add(new ResponseValidator.PayloadHash());
+		if (validators.size() == 1)
+			return validators.get(0);
+		return new ResponseValidator.Pipeline(validators.toArray(new ResponseValidator[validators.size()]));
+	}
+
+	/*
+	 * Gets the kind of the clients, which must be the same to reuse them.
+	 */
+	private String getClientKind(boolean http) {
+		if (http)
+			return "http";
+		else if (blockSize > 0)
+			return "block " + blockSize + " " + uploadSize;
+		else if (nio)
+			return "nio";
+		else
+			return "udp";
+	}
+
+	/*
+	 * A client waiting for a lost response keeps its thread until the
+	 * timeout. Such a client is closed and replaced, otherwise its thread
+	 * would continue with the next run.
+	 */
+	private int replaceBlocked() throws Exception {
+		int replaced = 0;
+		long deadline = System.nanoTime() + REUSE_GRACE * 1000000L;
+		for (int i = 0; i < deviceThreads.size() && i < devices.size(); i++) {
+			Thread thread = deviceThreads.get(i);
+			long left = deadline - System.nanoTime();
+			if (left > 0)
+				thread.join(left / 1000000L + 1);
+			if (thread.isAlive()) {
+				devices.get(i).close();
+				devices.set(i, createDevice(true, devices.get(i) instanceof HttpVirtualClient));
+				++replaced;
+			}
+		}
+		return replaced;
+	}
 	
 	public int getDeviceCount() {
 		return devices.size();
@@ -156,21 +369,50 @@ public class VirtualDeviceManager {
 	public void start(int count, int time, boolean clients) throws Exception {
 		ensurelog();
 		timestamp = 0;
+		this.clients = clients;
 		barrier = new CyclicBarrier(count + 1);
 		setDeviceCount(count, clients);
-		Thread[] threads = new Thread[count];
+		ArrayList<Thread> threads = new ArrayList<Thread>(count);
+		ArrayList<NioVirtualClient> nioClients = new ArrayList<NioVirtualClient>();
+		// with a rate, spread the intended times of the clients over the interval
+		long interval = rate > 0 ? count * 1000000000L / rate : 0;
+		long begin = clients && startTime != 0 ? startTime : System.nanoTime() + SCHEDULE_DELAY * 1000000L;
+		NotificationPacer.RateCap cap = null;
+		if (!clients && maxNotificationRate > 0)
+			cap = new NotificationPacer.RateCap(maxNotificationRate, burst);
 		for (int i=0;i<count;i++) {
 			VirtualDevice d = devices.get(i);
 			d.reset();
-			if (clients)
-				threads[i] = new Thread((VirtualClient)d);
+			if (d instanceof VirtualClientDevice)
+				((VirtualClientDevice)d).setSchedule(begin + (long) ((double) interval * i / count), interval);
+			if (d instanceof NioVirtualClient)
+				nioClients.add((NioVirtualClient)d);
+			else if (clients)
+				threads.add(DeviceThreads.newThread((Runnable)d, "VirtualClient-" + i, virtualThreads));
 			else {
-				threads[i] = new Thread((VirtualServer)d);
+				if (d instanceof VirtualServer)
+					((VirtualServer)d).setPacer(notificationRate > 0 || cap != null ? new NotificationPacer(notificationRate, arrival, burst, cap) : null);
+				threads.add(DeviceThreads.newThread((Runnable)d, "VirtualServer-" + i, virtualThreads));
 			}
 		}
 		System.err.println("\nSetup "+count+" virtual " + (clients ? "client" + (count == 1 ? "" : "s") : "server" + (count == 1 ? "" : "s")) + " for "+time+" ms");
-		for (int i=0;i<count;i++)
-			threads[i].start();
+		if (clients && rate > 0)
+			System.err.println("Constant rate of "+rate+" requests/s, each client every "+(interval / 1000)+" us");
+		if (!clients && (notificationRate > 0 || cap != null))
+			System.err.println("Pace notifications at " + (notificationRate > 0 ? notificationRate + "/s per server" : "any rate per server")
+					+ (cap != null ? ", at most " + maxNotificationRate + "/s in total" : "") + ", " + arrival.name().toLowerCase() + " inter-arrival, burst " + burst);
+		if (clients)
+			awaitStartTime();
+		for (Thread thread : threads)
+			thread.start();
+		if (clients)
+			deviceThreads.addAll(threads);
+		if (!nioClients.isEmpty()) {
+			if (engine == null)
+				engine = new NioClientEngine();
+			System.err.println("Drive virtual clients with " + Math.min(engine.getLoopCount(), nioClients.size()) + " selector loops");
+			engine.start(nioClients);
+		}
 		testlength = time;
 		
 		/* If we're executing a client benchmark, then we have to setup the test timer here */
@@ -180,6 +422,7 @@ public class VirtualDeviceManager {
 				public void run() {
 					stop();
 				} }, time);
+			startSampler(count);
 		}
 	}
 	
@@ -188,9 +431,12 @@ public class VirtualDeviceManager {
 		if (timestamp == 0)
 			return;
 		timestamp = 0;
+		stopSampler();
 		
 		for (VirtualDevice vd:devices)
 			vd.stop();
+		if (engine != null)
+			engine.stop();
 		
 		barrier.reset();
 		CoapClient client;
@@ -210,7 +456,7 @@ public class VirtualDeviceManager {
 			e.printStackTrace();
 		}
 		
-		if (!confirmable) {
+		if (!clients && !confirmable) {
 			client = new CoapClient(uri);
 			try {
 				response = client.get();
@@ -221,7 +467,7 @@ public class VirtualDeviceManager {
 		
 		int sum = 0;
 		int sumTimeout = 0;
-		ArrayList<Integer> latencies = new ArrayList<Integer>();
+		LatencyHistogram latencies = new LatencyHistogram();
 		
 		if (verbose)
 			System.out.println();
@@ -229,58 +475,133 @@ public class VirtualDeviceManager {
 		if (verbose)
 			System.out.println();
 		
+		long missed = 0;
+		ResponseStats rejected = new ResponseStats();
 		for (int i=0;i<devices.size();i++) {
 			VirtualDevice device = devices.get(i);
+			if (device instanceof VirtualClientDevice)
+				rejected.add(((VirtualClientDevice) device).getResponseStats());
 			int lost = device.getTimeouts();
-			latencies.addAll(device.getLatencies());
+			if (device.getLatencies() != null)
+				latencies.add(device.getLatencies());
 			int count = device.getCount();
 			sum += count;
-			
-			if (!confirmable) {
-				count = Integer.parseInt(response.getResponseText());
-			}
-			
 			sumTimeout += lost;
+			if (device instanceof VirtualServer && ((VirtualServer) device).getPacer() != null)
+				missed += ((VirtualServer) device).getPacer().getMissed();
 			
 			if (verbose)
-				System.out.format("Virtual client %2d received %7d, timeouts: %3d, throughput: %d /s\n"
-					, i, count, lost, (int) (count * 1000L / dt));
+				System.out.format("Virtual %s %2d %s %7d, timeouts: %3d, throughput: %d /s\n"
+					, clients ? "client" : "server", i, !clients && !confirmable ? "sent" : "received"
+					, count, lost, (int) (count * 1000L / dt));
 		}
 		
-		if (!confirmable) {
-			sum = count;
+		if (!clients && !confirmable) {
+			// NON notifications are not acknowledged, only the observer knows how many arrived
+			int sent = sum;
+			int received = -1;
+			if (response != null) {
+				try {
+					received = Integer.parseInt(response.getResponseText().trim());
+				} catch (NumberFormatException e) {
+					System.err.println("Observer returned no count: " + response.getResponseText());
+				}
+			}
+			if (received < 0) {
+				System.err.println("Could not retrieve the received notifications from the observer");
+			} else {
+				sum = received;
+				sumTimeout = Math.max(0, sent - received);
+				log.format("sent=%d, received=%d, lost=%d, loss=%.2f%%\n", sent, received, sumTimeout,
+						sent == 0 ? 0f : sumTimeout * 100f / sent);
+			}
 		}
+		if (missed > 0)
+			log.format("missed=%d notifications the servers could not send in time\n", missed);
 		
 		float throughput = (sum * 1000L) / dt;
 		
-		long latsum = 0;
-		for (int l:latencies) latsum += l;
-		double mean = (double) latsum / latencies.size();
-		double temp = 0;
-        for(int l : latencies) temp += (mean-l)*(mean-l);
-        double var = Math.sqrt(temp / latencies.size());
-           
-        if (latencies.size() > 0) {
-        	Collections.sort(latencies); // bad if length==0
-			int q50 = latencies.get((int) (latencies.size()/2));
-			int q66 = latencies.get((int) (latencies.size() * 2L/3));
-			int q75 = latencies.get((int) (latencies.size() * 3L/4));
-			int q80 = latencies.get((int) (latencies.size() * 4L/5));
-			int q90 = latencies.get((int) (latencies.size() * 9L/10));
-			int q95 = latencies.get((int) (latencies.size() * 19L/20));
-			int q98 = latencies.get((int) (latencies.size() * 98L/100));
-			int q99 = latencies.get((int) (latencies.size() * 99L/100));
-			int q100 = latencies.get(latencies.size() - 1);
-			
-			log.format("Timeouts, Concurrency, Time, Completed, Throughput | 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(ms)\n");
-			log.format("%d, %d, %.3f, %d, %.2f | %d, %d, %d, %d, %d, %d, %d, %d, %d, %.1f\n",
+        if (!latencies.isEmpty()) {
+			log.format("Timeouts, Concurrency, Time, Completed, Throughput | 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(%s)\n", latencyUnit.getSymbol());
+			log.format("%d, %d, %.3f, %d, %.2f | %s\n",
 					sumTimeout, count, dt/1000f, sum, throughput,
-					q50, q66, q75, q80, q90, q95, q98, q99, q100, var);
+					latencies.formatPercentiles(latencyUnit));
         
         } else {
         	// no latency
         	log.format("d=%d, t=%.3f, received=%d, timeouts=%d, throughput=%.2f, uri=%s\n", count, dt/1000f, sum, sumTimeout, throughput, uri.toString());
         }
+		if (!devices.isEmpty() && devices.get(0) instanceof BlockwiseVirtualClient)
+			logBlockwise(dt);
+		if (!rejected.isEmpty())
+			log.format("rejected=%d responses, not counted as completed (%s)\n", rejected.getRejected(), rejected.format());
+		if (resultFormat != null)
+			writeResult(dt, sum, sumTimeout, throughput, latencies);
+		if (seriesWriter != null)
+			seriesWriter.flush();
+		log.flush();
+		RunResult result = new RunResult(run, count, (long) dt, sum, sumTimeout, latencies);
+		synchronized (runLock) {
+			lastResult = result;
+			runLock.notifyAll();
+		}
+		if (resultListener != null)
+			resultListener.onResult(result);
+	}
+	
+	/*
+	 * Writes the result of a run as record into the result file.
+	 */
+	private void writeResult(float dt, int sum, int sumTimeout, float throughput, LatencyHistogram latencies) {
+		try {
+			if (resultSink == null) {
+				resultSink = new ResultSink(LOG_FILE + "_results", resultFormat, RESULT_COLUMNS);
+				resultSink.metadata(ResultSink.environment(uri));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		Object[] values = new Object[RESULT_COLUMNS.length];
+		values[0] = run;
+		values[1] = count;
+		values[2] = dt / 1000d;
+		values[3] = sum;
+		values[4] = sumTimeout;
+		values[5] = (double) throughput;
+		if (!latencies.isEmpty()) {
+			values[6] = latencyUnit.getSymbol();
+			for (int i = 0; i < RESULT_PERCENTILES.length; i++)
+				values[7 + i] = latencyUnit.fromMicros(latencies.getValueAtPercentile(RESULT_PERCENTILES[i]));
+			values[values.length - 1] = latencyUnit.fromMicros(latencies.getStdDeviation());
+		}
+		resultSink.write(values);
+		resultSink.flush();
+	}
+	
+	/*
+	 * Logs the blocks, the bytes per second and the block latencies of
+	 * block-wise clients. The completed count and latencies above refer to
+	 * whole transfers.
+	 */
+	private void logBlockwise(float dt) {
+		long blocks = 0;
+		long bytes = 0;
+		LatencyHistogram latencies = new LatencyHistogram();
+		for (VirtualDevice device : devices) {
+			BlockwiseVirtualClient client = (BlockwiseVirtualClient) device;
+			blocks += client.getBlocks();
+			bytes += client.getBytes();
+			if (client.getBlockLatencies() != null)
+				latencies.add(client.getBlockLatencies());
+		}
+		float bytesPerSecond = (bytes * 1000L) / dt;
+		if (!latencies.isEmpty()) {
+			log.format("Blocks, Bytes, Bytes/s | block 50%%, 66%%, 75%%, 80%%, 90%%, 95%%, 98%%, 99%%, 100%%, stdev(%s)\n", latencyUnit.getSymbol());
+			log.format("%d, %d, %.0f | %s\n", blocks, bytes, bytesPerSecond, latencies.formatPercentiles(latencyUnit));
+		} else {
+			log.format("blocks=%d, bytes=%d, bytes/s=%.0f\n", blocks, bytes, bytesPerSecond);
+		}
 	}
 	
 	public boolean isRunning() {
@@ -291,14 +612,16 @@ public class VirtualDeviceManager {
 		if (barrier != null)
 			try {
 				System.err.print("\nVDM: Barrier not null. Currently waiting are " + barrier.getNumberWaiting() + " threads; joining.");
+				awaitStartTime();
 				timer.schedule(new TimerTask() {
 					public void run() {
 						stop();
 					} }, testlength);
 				barrier.await();
 				timestamp = System.nanoTime();
+				startSampler(count);
 				System.err.println("\nVirtual servers collected at barrier; starting notification process.");
-			} catch (InterruptedException | BrokenBarrierException e) {
+			} catch (InterruptedException | BrokenBarrierException | IOException e) {
 				e.printStackTrace();
 			}
 	}
@@ -320,10 +643,379 @@ public class VirtualDeviceManager {
 	}
 
 	public void setEnableLatency(boolean enableLatency) {
-		System.err.println("Measure latency: "+enableLatency);
+		if (enableLatency != this.enableLatency)
+			System.err.println("Measure latency: "+enableLatency);
 		this.enableLatency = enableLatency;
 	}
 
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of outstanding requests per virtual client.
+	 * 
+	 * @param window number of outstanding requests
+	 * @throws IllegalArgumentException if the window is too large for the
+	 *             token length
+	 * @see VirtualClient#setWindow(int)
+	 */
+	public void setWindow(int window) {
+		setWindow(window, tokenLength);
+	}
+
+	/**
+	 * Sets the number of outstanding requests and the token length together.
+	 * Changing both one after the other may fail on the combination in
+	 * between.
+	 * 
+	 * @param window number of outstanding requests
+	 * @param tokenLength token length in bytes, or 0 for no token
+	 * @throws IllegalArgumentException if the token length is out of range or
+	 *             the window is too large for it
+	 * @see RequestWindow#getMaxSize(int)
+	 */
+	public void setWindow(int window, int tokenLength) {
+		if (tokenLength < 0 || tokenLength > TokenMessageProducer.MAX_TOKEN_LENGTH)
+			throw new IllegalArgumentException("Token length must be in [0, " + TokenMessageProducer.MAX_TOKEN_LENGTH + "], but is " + tokenLength);
+		RequestWindow.checkSize(window, tokenLength);
+		if (window != this.window)
+			System.err.println("Requests in flight per client: "+window);
+		if (tokenLength != this.tokenLength)
+			System.err.println("Token length: "+tokenLength);
+		this.window = window;
+		this.tokenLength = tokenLength;
+		for (VirtualDevice vd : devices)
+			if (vd instanceof VirtualClientDevice)
+				configureWindow((VirtualClientDevice) vd);
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * Sets the token length of the requests of the virtual clients.
+	 * 
+	 * @param tokenLength token length in bytes, or 0 for no token
+	 * @throws IllegalArgumentException if the token length is out of range or
+	 *             too short for the window
+	 * @see VirtualClientDevice#setTokenLength(int)
+	 */
+	public void setTokenLength(int tokenLength) {
+		setWindow(window, tokenLength);
+	}
+
+	/*
+	 * Sets window and token length of a client in an order, in which the
+	 * client never has a window too large for its token length.
+	 */
+	private void configureWindow(VirtualClientDevice vc) {
+		if (window > vc.getWindow()) {
+			vc.setTokenLength(tokenLength);
+			vc.setWindow(window);
+		} else {
+			vc.setWindow(window);
+			vc.setTokenLength(tokenLength);
+		}
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Sets the block size for block-wise transfers. With a block size, the
+	 * virtual clients transfer the resource block-wise instead of sending
+	 * single requests.
+	 * 
+	 * @param blockSize block size from 16 to 1024, or 0 for single requests
+	 * @see BlockwiseVirtualClient
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize != this.blockSize)
+			System.err.println("Block-wise transfers with block size: "+blockSize);
+		this.blockSize = blockSize;
+	}
+
+	public int getUploadSize() {
+		return uploadSize;
+	}
+
+	/**
+	 * Sets the number of bytes block-wise clients upload with Block1.
+	 * 
+	 * @param uploadSize bytes to upload, or 0 to download with Block2
+	 */
+	public void setUploadSize(int uploadSize) {
+		if (uploadSize != this.uploadSize)
+			System.err.println("Block-wise upload size: "+uploadSize);
+		this.uploadSize = uploadSize;
+	}
+
+	public WorkloadMix getWorkloadMix() {
+		return mix;
+	}
+
+	/**
+	 * Sets the workload mix of the virtual clients.
+	 * 
+	 * @param mix workload mix, or {@code null} for GET requests only
+	 * @see VirtualClientDevice#setWorkloadMix(WorkloadMix)
+	 */
+	public void setWorkloadMix(WorkloadMix mix) {
+		if (mix != null)
+			System.err.println("Workload mix: "+mix);
+		for (VirtualDevice vd : devices)
+			if (vd instanceof VirtualClientDevice)
+				((VirtualClientDevice)vd).setWorkloadMix(mix);
+		this.mix = mix;
+	}
+
+	/*
+	 * Starts sampling the devices of the current run, if enabled.
+	 */
+	private void startSampler(int count) throws IOException {
+		if (sampleInterval <= 0)
+			return;
+		if (seriesFormat != null && seriesWriter == null)
+			seriesWriter = new TimeSeriesWriter(LOG_FILE + "_series", seriesFormat, ResultSink.environment(uri));
+		if (seriesWriter != null)
+			seriesWriter.begin(run, count, testlength, latencyUnit);
+		sampler = new TimeSeriesSampler(devices.subList(0, count), log, seriesWriter, latencyUnit);
+		timer.scheduleAtFixedRate(sampler, sampleInterval, sampleInterval);
+	}
+
+	private void stopSampler() {
+		if (sampler != null) {
+			sampler.cancel();
+			sampler = null;
+		}
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Sets the interval in which the throughput, timeouts and latencies of
+	 * the running benchmark are logged.
+	 * 
+	 * @param sampleInterval interval in milliseconds, or 0 to log only the
+	 *            summary at the end of a run
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		if (sampleInterval < 0)
+			throw new IllegalArgumentException("Sample interval must not be negative, but is " + sampleInterval);
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Sets the format of the file, which the samples are additionally written
+	 * to.
+	 * 
+	 * @param seriesFormat format, or {@code null} to only log the samples
+	 * @see #setSampleInterval(int)
+	 */
+	public void setSeriesFormat(ResultSink.Format seriesFormat) {
+		if (seriesWriter != null && seriesFormat != this.seriesFormat) {
+			seriesWriter.close();
+			seriesWriter = null;
+		}
+		this.seriesFormat = seriesFormat;
+	}
+
+	/**
+	 * Sets the format of the file, which the result of each run is
+	 * additionally written to, e.g., for dashboards.
+	 * 
+	 * @param resultFormat format, or {@code null} to only log the results
+	 */
+	public void setResultFormat(ResultSink.Format resultFormat) {
+		if (resultSink != null && resultFormat != this.resultFormat) {
+			resultSink.close();
+			resultSink = null;
+		}
+		this.resultFormat = resultFormat;
+	}
+
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * Sets a constant rate for all clients together. The clients then send
+	 * their requests at intended times and measure the latency from there,
+	 * which corrects the coordinated omission of the default closed loop.
+	 * Use a window larger than 1 to keep the rate, even if the server stalls.
+	 * 
+	 * @param rate requests per second, or 0 to send as fast as possible
+	 * @see VirtualClientDevice#setSchedule(long, long)
+	 */
+	public void setRate(int rate) {
+		if (rate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + rate);
+		if (rate != this.rate)
+			System.err.println("Request rate: "+(rate == 0 ? "unlimited" : rate + "/s"));
+		this.rate = rate;
+	}
+
+	public boolean isNio() {
+		return nio;
+	}
+
+	/**
+	 * Sets, whether the virtual clients are driven by a {@link NioClientEngine}
+	 * with one selector loop per core instead of one thread per client. Takes
+	 * effect with the next start.
+	 * 
+	 * @param nio {@code true} to use the NIO engine
+	 */
+	public void setNio(boolean nio) {
+		if (nio != this.nio)
+			System.err.println("Use NIO engine: "+nio);
+		this.nio = nio;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Sets, whether each virtual device runs on a virtual thread instead of a
+	 * platform thread. Requires Java 21, otherwise platform threads are used.
+	 * Takes effect with the next start.
+	 * 
+	 * @param virtualThreads {@code true} to use virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads && !DeviceThreads.isVirtualSupported()) {
+			System.err.println("Virtual threads are not supported by this Java runtime, use platform threads.");
+			virtualThreads = false;
+		}
+		if (virtualThreads != this.virtualThreads)
+			System.err.println("Use virtual threads: "+virtualThreads);
+		this.virtualThreads = virtualThreads;
+		for (VirtualDevice vd : devices)
+			if (vd instanceof VirtualClient)
+				((VirtualClient)vd).setVirtualThreads(virtualThreads);
+	}
+
+	public int getPause() {
+		return pause;
+	}
+	
+	/**
+	 * Sets the pause between the runs of a series or a search, which lets
+	 * the server settle.
+	 * 
+	 * @param pause pause in milliseconds
+	 */
+	public void setPause(int pause) {
+		if (pause < 0)
+			throw new IllegalArgumentException("Pause must not be negative, but is " + pause);
+		this.pause = pause;
+	}
+	
+	public LatencyUnit getLatencyUnit() {
+		return latencyUnit;
+	}
+
+	/**
+	 * Sets the unit in which the latency percentiles are logged. The
+	 * latencies are always recorded in microseconds.
+	 * 
+	 * @param latencyUnit unit for the log
+	 */
+	public void setLatencyUnit(LatencyUnit latencyUnit) {
+		this.latencyUnit = latencyUnit;
+	}
+
+	/**
+	 * Sets the id of the next run, which is reported with its result.
+	 * 
+	 * @param run run id assigned by the master
+	 */
+	public void setRun(int run) {
+		this.run = run;
+	}
+
+	/**
+	 * Sets the time at which the next run starts, e.g., to start the runs of
+	 * several slaves synchronously. Clients start sending at this time, servers
+	 * start notifying when joining the barrier.
+	 * 
+	 * @param startTime {@link System#nanoTime()} of the start, or 0 to start
+	 *            immediately
+	 * @see ClockOffset
+	 */
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	private void awaitStartTime() {
+		if (startTime == 0)
+			return;
+		long delay = startTime - System.nanoTime();
+		if (delay < 0)
+			System.err.println("Missed the start time by " + (-delay / 1000) + " us");
+		while ((delay = startTime - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+		startTime = 0;
+	}
+
+	/**
+	 * Sets a body for HTTP clients, which then send POST requests, e.g., to
+	 * the request definitions of an HTTP-CoAP proxy.
+	 * 
+	 * @param file file with the body, or {@code null} for GET requests
+	 * @throws IOException if the file cannot be read
+	 */
+	public void setHttpBody(String file) throws IOException {
+		if (file == null) {
+			httpBody = null;
+			return;
+		}
+		httpBody = Files.readAllBytes(Paths.get(file));
+		httpContentType = file.endsWith(".json") ? "application/json" : "text/plain";
+		System.err.println("HTTP clients POST " + httpBody.length + " bytes of " + httpContentType + " from " + file);
+	}
+
+	/**
+	 * Sets the response code, which the clients accept.
+	 * 
+	 * @param expectedCode code, e.g., "2.05", class, e.g., "2.xx", "any", or
+	 *            {@code null} for 2.05, or 2.xx with a workload mix
+	 */
+	public void setExpectedCode(String expectedCode) {
+		if (expectedCode != null && !"any".equals(expectedCode))
+			new ResponseValidator.Code(expectedCode); // fail early
+		this.expectedCode = expectedCode;
+	}
+
+	/**
+	 * Sets the Content-Format, which the responses must have.
+	 * 
+	 * @param expectedFormat content format number, or -1 for any
+	 */
+	public void setExpectedFormat(int expectedFormat) {
+		this.expectedFormat = expectedFormat;
+	}
+
+	/**
+	 * Sets, whether the clients reject responses with a payload different
+	 * from their first response.
+	 * 
+	 * @param checkPayload {@code true} to compare the payloads
+	 */
+	public void setCheckPayload(boolean checkPayload) {
+		this.checkPayload = checkPayload;
+	}
+
+	public void setResultListener(ResultListener resultListener) {
+		this.resultListener = resultListener;
+	}
+
 	public boolean isVerbose() {
 		return verbose;
 	}
@@ -343,6 +1035,95 @@ public class VirtualDeviceManager {
 		for (VirtualDevice vd : devices)
 			if (vd instanceof VirtualServer)
 				((VirtualServer)vd).setConfirmable(confirmable);
+			else if (vd instanceof MultiObserverVirtualServer)
+				((MultiObserverVirtualServer)vd).setConfirmable(confirmable);
 	}
-}
 
+	public int getRelations() {
+		return relations;
+	}
+
+	/**
+	 * Sets the number of observe relations per virtual server. With more than
+	 * one relation, each server serves its relations on a single socket from
+	 * a small pool of sender threads.
+	 * 
+	 * @param relations observe relations per virtual server
+	 * @see MultiObserverVirtualServer
+	 */
+	public void setRelations(int relations) {
+		if (relations != this.relations)
+			System.err.println("Observe relations per virtual server: "+relations);
+		this.relations = relations;
+	}
+
+	/**
+	 * Sets the number of sender threads of a virtual server with several
+	 * relations.
+	 * 
+	 * @param senders sender threads per virtual server
+	 */
+	public void setSenders(int senders) {
+		this.senders = senders;
+	}
+
+	/**
+	 * Sets the notification rate per relation of a virtual server with several
+	 * relations.
+	 * 
+	 * @param relationRate notifications per second and relation, or 0 for
+	 *            round-robin as fast as possible
+	 */
+	public void setRelationRate(int relationRate) {
+		this.relationRate = relationRate;
+	}
+
+	/**
+	 * Sets the notification rate of each virtual server with a single relation.
+	 * 
+	 * @param notificationRate notifications per second and server, or 0 for as
+	 *            fast as possible
+	 * @see NotificationPacer
+	 */
+	public void setNotificationRate(int notificationRate) {
+		if (notificationRate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + notificationRate);
+		this.notificationRate = notificationRate;
+	}
+
+	/**
+	 * Caps the total notification rate of all virtual servers with a single
+	 * relation.
+	 * 
+	 * @param maxNotificationRate notifications per second, or 0 for no cap
+	 */
+	public void setMaxNotificationRate(int maxNotificationRate) {
+		if (maxNotificationRate < 0)
+			throw new IllegalArgumentException("Rate must not be negative, but is " + maxNotificationRate);
+		this.maxNotificationRate = maxNotificationRate;
+	}
+
+	public void setArrival(NotificationPacer.Arrival arrival) {
+		this.arrival = arrival;
+	}
+
+	/**
+	 * Sets how many notifications a paced server may send back to back to
+	 * catch up with its schedule.
+	 * 
+	 * @param burst notifications, at least 1
+	 */
+	public void setBurst(int burst) {
+		if (burst < 1)
+			throw new IllegalArgumentException("Burst must be at least 1, but is " + burst);
+		this.burst = burst;
+	}
+
+	/**
+	 * Is notified with the result of each run after it has been logged.
+	 */
+	public interface ResultListener {
+
+		void onResult(RunResult result);
+	}
+}
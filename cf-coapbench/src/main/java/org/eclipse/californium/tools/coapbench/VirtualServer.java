@@ -27,7 +27,6 @@ import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
@@ -62,15 +61,18 @@ public class VirtualServer implements Runnable, VirtualDevice {
 	private boolean registered = false;
 	
 	private boolean checkLatency = false;
-	private ArrayList<Integer> latencies;
+	private LatencyHistogram latencies;
 	
-	private int counter;
-	private int lost;
+	// written by a single thread each, read by the sampler
+	private volatile int counter;
+	private volatile int lost;
 	private long timestamp;
+	private int mid;
 	
 	private CyclicBarrier barrier;
 	
 	private VeryEcoNotificationProducer producer;
+	private NotificationPacer pacer;
 	
 	public VirtualServer(URI uri) throws Exception {
 		this(uri, null, false, false);
@@ -87,7 +89,6 @@ public class VirtualServer implements Runnable, VirtualDevice {
 		this.bindAddress = addr;
 		this.postURI = uri;
 		this.confirmable = confirmable;
-		this.latencies = new ArrayList<Integer>();
 
 		bind(addr);
 	}
@@ -125,7 +126,18 @@ public class VirtualServer implements Runnable, VirtualDevice {
 			pSend.setPort(destPort);
 
 			// the if is moved outside of the test loop to reduce the logic processing overhead
-			if (confirmable) {
+			if (pacer != null) {
+				pacer.start();
+				while (runnable) {
+					pacer.await();
+					if (!runnable)
+						break;
+					notifyObserver();
+					if (confirmable)
+						awaitAck();
+				}
+			}
+			else if (confirmable) {
 				while (runnable) {
 					notifyObserver();
 					awaitAck();
@@ -270,27 +282,44 @@ public class VirtualServer implements Runnable, VirtualDevice {
 	 * an empty notification to each of them.
 	 */
 	public void notifyObserver() throws IOException {
-		pSend.setData(producer.next());
-		socket.send(pSend);
+		byte[] next = producer.next();
+		pSend.setData(next);
 		
 		if (!confirmable) {
+			socket.send(pSend);
 			++counter;
 		}
 		
-		else if (checkLatency) {
+		else {
+			mid = (next[2] & 0xFF) << 8 | next[3] & 0xFF;
+			// take the timestamp just before sending to not include the serialization
 			timestamp = System.nanoTime();
+			socket.send(pSend);
 		}
 	}
 	
 	/* Should the server be configured to send confirmable notifications, it will have to wait
 	 * for the acknowledgements from the clients. It also counts the number of acknowledgements
-	 * for statistics.
+	 * for statistics. Only an ACK with the MID of the last notification counts, late ACKs of
+	 * already timed out notifications are skipped. An RST cancels the relation and is counted
+	 * as lost.
 	 */
 	public void awaitAck() {		
 		try {
 			while (true) {
 				socket.receive(pRecv);
-				if (checkLatency) latencies.add((int)(System.nanoTime() - timestamp));
+				long now = System.nanoTime();
+				byte[] ack = pRecv.getData();
+				if (pRecv.getLength() < 4 || ((ack[2] & 0xFF) << 8 | ack[3] & 0xFF) != mid)
+					continue;
+				int type = (ack[0] & 0x30) >> 4;
+				if (type == Type.RST.value) {
+					++lost;
+					return;
+				}
+				if (type != Type.ACK.value)
+					continue;
+				if (checkLatency) latencies.recordNanos(now - timestamp);
 				++counter;
 				return;
 			}
@@ -326,11 +355,14 @@ public class VirtualServer implements Runnable, VirtualDevice {
 
 	@Override
 	public void setCheckLatency(boolean checkLatency) { 
+		// allocate the histogram only if required
+		if (checkLatency && latencies == null)
+			latencies = new LatencyHistogram();
 		this.checkLatency = checkLatency;
 	}
 
 	@Override
-	public ArrayList<Integer> getLatencies() {
+	public LatencyHistogram getLatencies() {
 		return latencies;
 	}
 	
@@ -343,6 +375,8 @@ public class VirtualServer implements Runnable, VirtualDevice {
 	public void reset() { 
 		lost = 0; 
 		counter = 0; 
+		if (latencies != null)
+			latencies.clear();
 		runnable = true;
 		registered = false;
 	}
@@ -355,6 +389,21 @@ public class VirtualServer implements Runnable, VirtualDevice {
 		this.confirmable = confirmable;
 	}
 	
+	/**
+	 * Sets the pacer of the notifications. Without pacer, the server sends the
+	 * next notification as soon as the previous one was sent or, for CON
+	 * notifications, acknowledged.
+	 * 
+	 * @param pacer the pacer, or null
+	 */
+	public void setPacer(NotificationPacer pacer) {
+		this.pacer = pacer;
+	}
+	
+	public NotificationPacer getPacer() {
+		return pacer;
+	}
+	
 	@Override
 	public boolean isRunning() {
 		return runnable;
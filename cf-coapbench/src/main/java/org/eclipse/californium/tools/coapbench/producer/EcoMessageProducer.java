@@ -18,10 +18,9 @@
 package org.eclipse.californium.tools.coapbench.producer;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.Random;
 
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.Type;
@@ -31,20 +30,25 @@ import org.eclipse.californium.elements.AddressEndpointContext;
 import org.eclipse.californium.elements.RawData;
 
 /**
- * Produces requests in form of {@link RawData}, i.e. byte arrays. This produces
- * is rather economic because it creates all 65000 requests (with different
- * MIDs) once and only changes the port after all requests have been used once.
- * This producer is able to produce an infinit amount of requests but only needs
- * the memory for 65000 of them.
+ * Produces requests in form of {@link RawData}, i.e. byte arrays. This producer
+ * is rather economic because it serializes the request only once and patches
+ * the MID (bytes 2 and 3) of each new request into a copy of this template. It
+ * only changes the port after all 65536 MIDs have been used once. The ports
+ * follow a random permutation. This producer is able to produce an infinit
+ * amount of requests but only needs the memory for a single one.
+ * <p>
+ * The template has no token, so the MID is the only field to patch.
  */
 public class EcoMessageProducer implements Iterator<RawData> {
 
+	private static final int MID_COUNT = 1 << 16;
+
 	private InetAddress address;
 
-	private short[] ports;
+	private final short[] ports = new short[1 << 16];
 
-	private ArrayList<byte[]> messages;
-	private int ptr_message = 0;
+	private final byte[] template;
+	private int mid = 0;
 	private int ptr_port = 0;
 	
 	private int counter;
@@ -59,26 +63,24 @@ public class EcoMessageProducer implements Iterator<RawData> {
 		this.amount = amount;
 		try {
 
-			ports = new short[1 << 16];
-			ArrayList<Short> ps = new ArrayList<Short>(ports.length);
-			for (int i = 0; i < (1 << 16); i++)
-				ps.add((short) i);
-			Collections.shuffle(ps);
-			for (int i = 0; i < (1 << 16); i++)
-				ports[i] = ps.get(i);
-			Collections.shuffle(Arrays.asList(ports));
-
-			messages = new ArrayList<byte[]>(1 << 16);
-			for (int i = 0; i < 1 << 16; i++) {
-				Request request = new Request(Code.GET);
-				request.setType(Type.NON);
-				request.setToken(new byte[0]);
-				request.setMID(i);
-				request.setURI(targetURI);
-				byte[] bytes = serializer.serializeRequest(request).getBytes();
-				messages.add(bytes);
+			// Fisher-Yates shuffle
+			Random random = new Random();
+			for (int i = 0; i < ports.length; i++)
+				ports[i] = (short) i;
+			for (int i = ports.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				short port = ports[i];
+				ports[i] = ports[j];
+				ports[j] = port;
 			}
 
+			Request request = new Request(Code.GET);
+			request.setType(Type.NON);
+			request.setToken(new byte[0]);
+			request.setMID(0);
+			request.setURI(targetURI);
+			template = serializer.serializeRequest(request).getBytes();
+
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
@@ -91,13 +93,44 @@ public class EcoMessageProducer implements Iterator<RawData> {
 
 	@Override
 	public RawData next() {
-		RawData raw = RawData.outbound(messages.get(ptr_message), new AddressEndpointContext(address, ports[ptr_port]), null, false);
-		if (++ptr_message >= 1 << 16) {
-			ptr_message = 0;
-			ptr_port++;
+		byte[] bytes = template.clone();
+		bytes[2] = (byte) (mid >> 8);
+		bytes[3] = (byte) mid;
+		RawData raw = RawData.outbound(bytes, new AddressEndpointContext(address, ports[ptr_port] & 0xFFFF), null, false);
+		advance();
+		return raw;
+	}
+
+	/**
+	 * Writes the next request into the buffer. Unlike {@link #next()}, this
+	 * does not allocate anything.
+	 * 
+	 * @param buffer buffer to write the request to, at its current position
+	 * @throws java.nio.BufferOverflowException if the buffer has not enough
+	 *             space left
+	 */
+	public void next(ByteBuffer buffer) {
+		int start = buffer.position();
+		buffer.put(template);
+		buffer.put(start + 2, (byte) (mid >> 8));
+		buffer.put(start + 3, (byte) mid);
+		advance();
+	}
+
+	private void advance() {
+		if (++mid == MID_COUNT) {
+			mid = 0;
+			if (++ptr_port == ports.length)
+				ptr_port = 0;
 		}
 		counter++;
-		return raw;
+	}
+
+	/**
+	 * @return the size of each request in bytes
+	 */
+	public int getSize() {
+		return template.length;
 	}
 
 	@Override
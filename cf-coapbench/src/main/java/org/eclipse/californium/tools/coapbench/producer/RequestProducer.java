@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench.producer;
+
+import java.net.URI;
+import java.util.Iterator;
+
+/**
+ * Produces the serialized requests of a virtual client. A producer may reuse
+ * the returned array for the next request and must therefore only be used by a
+ * single thread.
+ */
+public interface RequestProducer extends Iterator<byte[]> {
+
+	/**
+	 * Sets the target of the requests.
+	 * 
+	 * @param uri target URI
+	 */
+	public void setURI(URI uri);
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench.producer;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+
+/**
+ * Like the {@link VeryEcoMessageProducer}, but each request also has a token
+ * of a configurable length. The token is a rolling counter, which is increased
+ * in place together with the MID. Each request in flight therefore has a
+ * unique token as long as less than 2^(8*length) requests are outstanding,
+ * and the server has to match the requests by token like for real clients.
+ * <p>
+ * Since the token is increased with each request, the lower 31 bits of the
+ * token are a sequential key of the request, see {@link #getKey(byte[], int)}.
+ */
+public class TokenMessageProducer extends VeryEcoMessageProducer {
+
+	public static final int MAX_TOKEN_LENGTH = 8;
+
+	private final int tokenLength;
+
+	public TokenMessageProducer(int tokenLength, URI uri) {
+		this(tokenLength);
+		setURI(uri);
+	}
+
+	public TokenMessageProducer(int tokenLength) {
+		if (tokenLength < 1 || tokenLength > MAX_TOKEN_LENGTH)
+			throw new IllegalArgumentException("Token length must be in [1, " + MAX_TOKEN_LENGTH + "], but is " + tokenLength);
+		this.tokenLength = tokenLength;
+	}
+
+	@Override
+	public void setURI(URI uri) {
+		Request request = new Request(Code.GET);
+		request.setType(Type.CON);
+		request.setToken(new byte[tokenLength]);
+		request.setMID(0);
+		request.setURI(uri);
+		prototype = serializer.serializeRequest(request).getBytes();
+	}
+
+	@Override
+	public byte[] next() {
+		// increase MID at location [2,3]
+		if (++prototype[3] == 0)
+			++prototype[2];
+		// increase token at location [4,4+length)
+		for (int i = 3 + tokenLength; i > 3; i--)
+			if (++prototype[i] != 0)
+				break;
+		return prototype;
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * Gets the key of a request or response, i.e., the lower 31 bits of its
+	 * token.
+	 * 
+	 * @param bytes message
+	 * @param tokenLength expected token length
+	 * @return key, or -1, if the message has a token of another length
+	 */
+	public static int getKey(byte[] bytes, int tokenLength) {
+		if ((bytes[0] & 0x0F) != tokenLength)
+			return -1;
+		int key = 0;
+		for (int i = Math.max(4, 4 + tokenLength - 4); i < 4 + tokenLength; i++)
+			key = (key << 8) | (bytes[i] & 0xFF);
+		return key & 0x7FFFFFFF;
+	}
+
+	/**
+	 * Gets the key of a request or response, i.e., the lower 31 bits of its
+	 * token.
+	 * 
+	 * @param buffer message starting at position 0
+	 * @param tokenLength expected token length
+	 * @return key, or -1, if the message has a token of another length
+	 */
+	public static int getKey(ByteBuffer buffer, int tokenLength) {
+		if ((buffer.get(0) & 0x0F) != tokenLength)
+			return -1;
+		int key = 0;
+		for (int i = Math.max(4, 4 + tokenLength - 4); i < 4 + tokenLength; i++)
+			key = (key << 8) | (buffer.get(i) & 0xFF);
+		return key & 0x7FFFFFFF;
+	}
+}
@@ -18,7 +18,6 @@
 package org.eclipse.californium.tools.coapbench.producer;
 
 import java.net.URI;
-import java.util.Iterator;
 
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.Type;
@@ -33,10 +32,10 @@ import org.eclipse.californium.elements.RawData;
  * environment (because there is actually only one single request that is reused
  * infinitely often).
  */
-public class VeryEcoMessageProducer implements Iterator<byte[]> {
+public class VeryEcoMessageProducer implements RequestProducer {
 
-	private final UdpDataSerializer serializer = new UdpDataSerializer();
-	private byte[] prototype;
+	protected final UdpDataSerializer serializer = new UdpDataSerializer();
+	protected byte[] prototype;
 
 	public VeryEcoMessageProducer(URI uri) {
 		setURI(uri);
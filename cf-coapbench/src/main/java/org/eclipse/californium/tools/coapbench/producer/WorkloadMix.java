@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench.producer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+
+/**
+ * A mix of requests with different methods, paths and payload sizes, each with
+ * a relative weight. A mix is read from a spec file with one request per line:
+ * <pre>
+ * # method path payload-size weight
+ * GET    /config          0  10
+ * POST   /storage        64  85
+ * DELETE /storage/old     0   5
+ * </pre>
+ * The path may also contain a query, e.g., {@code /fibonacci?n=20}. The host
+ * and port are always the ones of the benchmark target. Empty lines and lines
+ * starting with # are ignored.
+ */
+public class WorkloadMix {
+
+	/** Maximum payload size, so that a request fits into a single datagram. */
+	public static final int MAX_PAYLOAD_SIZE = 1024;
+
+	private final List<Entry> entries;
+	private final String name;
+
+	public WorkloadMix(String name, List<Entry> entries) {
+		if (entries.isEmpty())
+			throw new IllegalArgumentException("Workload mix " + name + " has no entries");
+		this.name = name;
+		this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(name);
+		for (Entry entry : entries)
+			builder.append("\n    ").append(entry);
+		return builder.toString();
+	}
+
+	/**
+	 * Reads a workload mix from a spec file.
+	 * 
+	 * @param file name of the spec file
+	 * @return the workload mix
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	public static WorkloadMix read(String file) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("\\s+");
+				if (parts.length != 4)
+					throw new IllegalArgumentException(file + ":" + number + ": expected \"method path payload-size weight\", but was \"" + line + "\"");
+				try {
+					entries.add(new Entry(Code.valueOf(parts[0].toUpperCase()), parts[1],
+							Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + ":" + number + ": " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return new WorkloadMix(file, entries);
+	}
+
+	/**
+	 * A request of the mix.
+	 */
+	public static class Entry {
+
+		private final Code method;
+		private final String path;
+		private final int payloadSize;
+		private final int weight;
+
+		public Entry(Code method, String path, int payloadSize, int weight) {
+			if (!path.startsWith("/"))
+				throw new IllegalArgumentException("Path must start with /, but is " + path);
+			if (payloadSize < 0 || payloadSize > MAX_PAYLOAD_SIZE)
+				throw new IllegalArgumentException("Payload size must be in [0, " + MAX_PAYLOAD_SIZE + "], but is " + payloadSize);
+			if (weight < 1)
+				throw new IllegalArgumentException("Weight must be positive, but is " + weight);
+			this.method = method;
+			this.path = path;
+			this.payloadSize = payloadSize;
+			this.weight = weight;
+		}
+
+		public Code getMethod() {
+			return method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public int getPayloadSize() {
+			return payloadSize;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		@Override
+		public String toString() {
+			return method + " " + path + " " + payloadSize + " bytes, weight " + weight;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench.producer;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+
+/**
+ * Produces the requests of a {@link WorkloadMix}. Each request of the mix is
+ * serialized once into a template. For each new request, a template is chosen
+ * according to the weights by Walker's alias method, i.e., in constant time
+ * with a single random number and without allocation. The MID and the
+ * optional rolling token are then patched into the template in place, so the
+ * MIDs and tokens are sequential across all templates.
+ * <p>
+ * This producer must only be used in a single thread, since it returns the
+ * templates themselves.
+ */
+public class WorkloadMixProducer implements RequestProducer {
+
+	private final UdpDataSerializer serializer = new UdpDataSerializer();
+	private final WorkloadMix mix;
+	private final int tokenLength;
+	
+	private byte[][] templates;
+	
+	// alias table
+	private final int[] alias;
+	private final int[] threshold;
+	
+	private int mid;
+	private long token;
+	private long random = System.nanoTime() | 1;
+
+	public WorkloadMixProducer(WorkloadMix mix, int tokenLength, URI uri) {
+		if (tokenLength < 0 || tokenLength > TokenMessageProducer.MAX_TOKEN_LENGTH)
+			throw new IllegalArgumentException("Token length must be in [0, " + TokenMessageProducer.MAX_TOKEN_LENGTH + "], but is " + tokenLength);
+		this.mix = mix;
+		this.tokenLength = tokenLength;
+		int n = mix.getEntries().size();
+		this.alias = new int[n];
+		this.threshold = new int[n];
+		buildAliasTable(mix.getEntries());
+		setURI(uri);
+	}
+
+	@Override
+	public void setURI(URI uri) {
+		List<WorkloadMix.Entry> entries = mix.getEntries();
+		byte[][] templates = new byte[entries.size()][];
+		for (int i = 0; i < templates.length; i++) {
+			WorkloadMix.Entry entry = entries.get(i);
+			Request request = new Request(entry.getMethod());
+			request.setType(Type.CON);
+			request.setToken(new byte[tokenLength]);
+			request.setMID(0);
+			request.setURI(uri.resolve(entry.getPath()));
+			if (entry.getPayloadSize() > 0) {
+				byte[] payload = new byte[entry.getPayloadSize()];
+				Arrays.fill(payload, (byte) 'x');
+				request.getOptions().setContentFormat(MediaTypeRegistry.TEXT_PLAIN);
+				request.setPayload(payload);
+			}
+			templates[i] = serializer.serializeRequest(request).getBytes();
+		}
+		this.templates = templates;
+	}
+
+	/*
+	 * Walker's alias method (Vose's variant): each column i is chosen with
+	 * probability 1/n and then either i itself or alias[i] is taken. The
+	 * thresholds are scaled to 31 bit.
+	 */
+	private void buildAliasTable(List<WorkloadMix.Entry> entries) {
+		int n = entries.size();
+		long total = 0;
+		for (WorkloadMix.Entry entry : entries)
+			total += entry.getWeight();
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int s = 0, l = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = (double) entries.get(i).getWeight() * n / total;
+			if (scaled[i] < 1.0)
+				small[s++] = i;
+			else
+				large[l++] = i;
+		}
+		while (s > 0 && l > 0) {
+			int less = small[--s];
+			int more = large[--l];
+			threshold[less] = (int) (scaled[less] * Integer.MAX_VALUE);
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+			if (scaled[more] < 1.0)
+				small[s++] = more;
+			else
+				large[l++] = more;
+		}
+		// remaining columns are full (up to rounding errors)
+		while (l > 0) {
+			int i = large[--l];
+			threshold[i] = Integer.MAX_VALUE;
+			alias[i] = i;
+		}
+		while (s > 0) {
+			int i = small[--s];
+			threshold[i] = Integer.MAX_VALUE;
+			alias[i] = i;
+		}
+	}
+
+	/*
+	 * Xorshift64* generator, which is fast enough to not show up in the
+	 * benchmark and does not allocate.
+	 */
+	private long nextRandom() {
+		random ^= random >>> 12;
+		random ^= random << 25;
+		random ^= random >>> 27;
+		return random * 2685821657736338717L;
+	}
+
+	/**
+	 * Chooses the index of the next template according to the weights.
+	 * 
+	 * @return index into {@link WorkloadMix#getEntries()}
+	 */
+	int nextIndex() {
+		long r = nextRandom();
+		// upper 32 bit choose the column, lower 31 bit decide against the threshold
+		int column = (int) ((r >>> 32) * templates.length >>> 32);
+		return ((int) r & Integer.MAX_VALUE) < threshold[column] ? column : alias[column];
+	}
+
+	@Override
+	public boolean hasNext() {
+		return true;
+	}
+
+	@Override
+	public byte[] next() {
+		byte[] template = templates[nextIndex()];
+		mid = (mid + 1) & 0xFFFF;
+		template[2] = (byte) (mid >> 8);
+		template[3] = (byte) mid;
+		if (tokenLength > 0) {
+			++token;
+			long value = token;
+			for (int i = 3 + tokenLength; i > 3; i--) {
+				template[i] = (byte) value;
+				value >>>= 8;
+			}
+		}
+		return template;
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	@Override
+	public void remove() { }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertTrue(histogram.isEmpty());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(0, histogram.getMaxValue());
+		assertEquals("", histogram.encode());
+	}
+
+	@Test
+	public void testExactValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 50; value++)
+			histogram.record(value);
+		assertEquals(50, histogram.getTotalCount());
+		assertEquals(26, histogram.getValueAtPercentile(50));
+		assertEquals(50, histogram.getValueAtPercentile(99));
+		assertEquals(50, histogram.getValueAtPercentile(100));
+		assertEquals(50, histogram.getMaxValue());
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// the last exact value
+		histogram.record(LatencyHistogram.SUB_BUCKETS - 1);
+		assertEquals(LatencyHistogram.SUB_BUCKETS - 1, histogram.getValueAtPercentile(100));
+		// the first bucket above spans two values
+		histogram.clear();
+		histogram.record(LatencyHistogram.SUB_BUCKETS);
+		assertEquals(LatencyHistogram.SUB_BUCKETS + 1, histogram.getValueAtPercentile(100));
+		histogram.clear();
+		histogram.record(LatencyHistogram.SUB_BUCKETS + 1);
+		assertEquals(LatencyHistogram.SUB_BUCKETS + 1, histogram.getValueAtPercentile(100));
+		// the next power of two starts a new bucket
+		histogram.clear();
+		histogram.record(2 * LatencyHistogram.SUB_BUCKETS - 1);
+		assertEquals(2 * LatencyHistogram.SUB_BUCKETS - 1, histogram.getValueAtPercentile(100));
+		histogram.clear();
+		histogram.record(2 * LatencyHistogram.SUB_BUCKETS);
+		assertEquals(2 * LatencyHistogram.SUB_BUCKETS + 3, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testMaxValue() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(LatencyHistogram.MAX_VALUE);
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMaxValue());
+		// larger values are clipped, negative ones recorded as 0
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-1);
+		assertEquals(3, histogram.getTotalCount());
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testRelativeError() {
+		Random random = new Random(0);
+		for (int i = 0; i < 10000; i++) {
+			long value = 1 + (long) (random.nextDouble() * LatencyHistogram.MAX_VALUE);
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.record(value);
+			long recorded = histogram.getValueAtPercentile(100);
+			assertTrue(value + " recorded as " + recorded, recorded >= value);
+			assertTrue(value + " recorded as " + recorded,
+					recorded - value < value * 2.0 / LatencyHistogram.SUB_BUCKETS);
+		}
+	}
+
+	@Test
+	public void testEncodeDecode() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(0);
+		histogram.record(17);
+		histogram.record(17);
+		histogram.record(5000);
+		histogram.record(LatencyHistogram.MAX_VALUE);
+		LatencyHistogram decoded = LatencyHistogram.decode(histogram.encode());
+		assertEquals(histogram.encode(), decoded.encode());
+		assertEquals(5, decoded.getTotalCount());
+		for (double percentile : new double[] { 0, 25, 50, 75, 99, 100 })
+			assertEquals(histogram.getValueAtPercentile(percentile), decoded.getValueAtPercentile(percentile));
+		assertTrue(LatencyHistogram.decode("").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeMalformedBucket() {
+		LatencyHistogram.decode("17");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeIndexOutOfRange() {
+		LatencyHistogram.decode("100000:1");
+	}
+
+	@Test
+	public void testAddAndSubtract() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		for (int i = 0; i < 100; i++) {
+			first.record(10);
+			second.record(1000);
+		}
+		LatencyHistogram sum = new LatencyHistogram();
+		sum.add(first);
+		sum.add(second);
+		assertEquals(200, sum.getTotalCount());
+		assertEquals(10, sum.getValueAtPercentile(49));
+		assertEquals(second.getValueAtPercentile(50), sum.getValueAtPercentile(50));
+		// the interval between two snapshots
+		sum.subtract(first);
+		assertEquals(second.encode(), sum.encode());
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RequestWindowTest {
+
+	@Test
+	public void testAddAndRemove() {
+		RequestWindow window = new RequestWindow(4);
+		assertEquals(0, window.add(10, 1000));
+		assertEquals(0, window.add(11, 2000));
+		assertEquals(2, window.getOutstanding());
+		assertEquals(2000, window.remove(11));
+		assertEquals(1000, window.remove(10));
+		assertEquals(0, window.getOutstanding());
+	}
+
+	@Test
+	public void testRemoveUnknownKey() {
+		RequestWindow window = new RequestWindow(4);
+		window.add(10, 1000);
+		assertEquals(-1, window.remove(12));
+		// a duplicate response
+		assertEquals(1000, window.remove(10));
+		assertEquals(-1, window.remove(10));
+	}
+
+	@Test
+	public void testReplaceLostRequest() {
+		// 4 requests use 8 slots, key 18 reuses the slot of key 10
+		RequestWindow window = new RequestWindow(4);
+		window.add(10, 1000);
+		assertEquals(1, window.add(18, 2000));
+		assertEquals(1, window.getOutstanding());
+		assertEquals(-1, window.remove(10));
+		assertEquals(2000, window.remove(18));
+	}
+
+	@Test
+	public void testExpire() {
+		RequestWindow window = new RequestWindow(4);
+		window.add(1, 1000);
+		window.add(2, 5000);
+		assertEquals(1, window.expire(6000, 5000));
+		assertEquals(1, window.getOutstanding());
+		assertEquals(-1, window.remove(1));
+		assertEquals(5000, window.remove(2));
+	}
+
+	@Test
+	public void testAwait() throws InterruptedException {
+		RequestWindow window = new RequestWindow(2);
+		assertTrue(window.await(0));
+		window.add(1, 1000);
+		window.add(2, 1000);
+		assertFalse(window.await(0));
+		window.remove(1);
+		assertTrue(window.await(0));
+	}
+
+	@Test
+	public void testReleaseWaitingSender() throws InterruptedException {
+		final RequestWindow window = new RequestWindow(1);
+		window.add(1, 1000);
+		Thread releaser = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// release anyway
+				}
+				window.release();
+			}
+		});
+		releaser.start();
+		long start = System.nanoTime();
+		assertFalse(window.await(10000));
+		assertTrue(System.nanoTime() - start < 5000000000L);
+		releaser.join();
+		// stays released until cleared
+		window.remove(1);
+		assertFalse(window.await(0));
+		window.clear();
+		assertTrue(window.await(0));
+	}
+
+	@Test
+	public void testMaxSize() {
+		assertEquals(RequestWindow.MAX_SIZE, RequestWindow.getMaxSize(0));
+		assertEquals(128, RequestWindow.getMaxSize(1));
+		assertEquals(RequestWindow.MAX_SIZE, RequestWindow.getMaxSize(2));
+		RequestWindow.checkSize(128, 1);
+		RequestWindow.checkSize(RequestWindow.MAX_SIZE, 8);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWindowTooLargeForToken() {
+		RequestWindow.checkSize(129, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyWindow() {
+		RequestWindow.checkSize(0, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWindowTooLarge() {
+		new RequestWindow(RequestWindow.MAX_SIZE + 1);
+	}
+}
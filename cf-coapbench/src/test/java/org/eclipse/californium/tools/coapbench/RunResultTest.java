@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RunResultTest {
+
+	@Test
+	public void testEncodeDecode() {
+		LatencyHistogram latencies = new LatencyHistogram();
+		latencies.record(120);
+		latencies.record(3500);
+		latencies.record(LatencyHistogram.MAX_VALUE);
+		RunResult result = new RunResult(7, 100, 30000, 600000, 12, latencies);
+		RunResult decoded = RunResult.decode(result.encode());
+		assertEquals(7, decoded.getRun());
+		assertEquals(1, decoded.getSlaves());
+		assertEquals(100, decoded.getDevices());
+		assertEquals(30000, decoded.getTime());
+		assertEquals(600000, decoded.getCompleted());
+		assertEquals(12, decoded.getTimeouts());
+		assertEquals(20000.0, decoded.getThroughput(), 0.001);
+		assertEquals(latencies.encode(), decoded.getLatencies().encode());
+		assertEquals(result.encode(), decoded.encode());
+	}
+
+	@Test
+	public void testDecodeWithoutLatencies() {
+		RunResult result = new RunResult(1, 10, 1000, 500, 0, null);
+		RunResult decoded = RunResult.decode(result.encode());
+		assertTrue(decoded.getLatencies().isEmpty());
+		assertEquals(500.0, decoded.getThroughput(), 0.001);
+	}
+
+	@Test
+	public void testDecodeIgnoresUnknownFields() {
+		RunResult decoded = RunResult.decode(RunResult.CMD_RESULT + " run=3 devices=2 time=1000 completed=10 timeouts=0 cpu=80 latencies=");
+		assertEquals(3, decoded.getRun());
+		assertEquals(10, decoded.getCompleted());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeNotAResult() {
+		RunResult.decode("bench -c 10 coap://localhost/hello");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeMalformedNumber() {
+		RunResult.decode(RunResult.CMD_RESULT + " run=1 completed=many");
+	}
+
+	@Test
+	public void testMergeTwoSlaves() {
+		LatencyHistogram fast = new LatencyHistogram();
+		LatencyHistogram slow = new LatencyHistogram();
+		for (int i = 0; i < 99; i++)
+			fast.record(100);
+		slow.record(50000);
+		RunResult first = RunResult.decode(new RunResult(5, 50, 30000, 300000, 1, fast).encode());
+		RunResult second = RunResult.decode(new RunResult(5, 20, 31000, 62000, 3, slow).encode());
+
+		RunResult merged = new RunResult(5);
+		merged.merge(first);
+		merged.merge(second);
+		assertEquals(5, merged.getRun());
+		assertEquals(2, merged.getSlaves());
+		assertEquals(70, merged.getDevices());
+		// the slaves run concurrently
+		assertEquals(31000, merged.getTime());
+		assertEquals(362000, merged.getCompleted());
+		assertEquals(4, merged.getTimeouts());
+		assertEquals(10000.0 + 2000.0, merged.getThroughput(), 0.001);
+		assertEquals(100, merged.getLatencies().getTotalCount());
+		assertEquals(fast.getValueAtPercentile(50), merged.getLatencies().getValueAtPercentile(50));
+		assertEquals(slow.getMaxValue(), merged.getLatencies().getMaxValue());
+	}
+
+	@Test
+	public void testEscapeJson() {
+		assertEquals("a\\\"b\\\\c\\u000a", RunResult.escapeJson("a\"b\\c\n"));
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ ******************************************************************************/
+package org.eclipse.californium.tools.coapbench.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.junit.After;
+import org.junit.Test;
+
+public class WorkloadMixTest {
+
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null)
+			file.delete();
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		WorkloadMix mix = read("# method path payload-size weight\n"
+				+ "GET    /config          0  10\n"
+				+ "\n"
+				+ "  post /storage        64  85\n"
+				+ "DELETE /fibonacci?n=20  0   5\n");
+		assertEquals(3, mix.getEntries().size());
+		WorkloadMix.Entry entry = mix.getEntries().get(0);
+		assertEquals(Code.GET, entry.getMethod());
+		assertEquals("/config", entry.getPath());
+		assertEquals(0, entry.getPayloadSize());
+		assertEquals(10, entry.getWeight());
+		entry = mix.getEntries().get(1);
+		assertEquals(Code.POST, entry.getMethod());
+		assertEquals(64, entry.getPayloadSize());
+		assertEquals("/fibonacci?n=20", mix.getEntries().get(2).getPath());
+	}
+
+	@Test
+	public void testMalformedLine() throws IOException {
+		assertRejected("GET /config 0\n", ":1:");
+		assertRejected("# comment\nGET /config 0 ten\n", ":2:");
+		assertRejected("FETCHALL /config 0 1\n", ":1:");
+	}
+
+	@Test
+	public void testInvalidEntry() throws IOException {
+		assertRejected("GET config 0 1\n", "Path");
+		assertRejected("POST /storage " + (WorkloadMix.MAX_PAYLOAD_SIZE + 1) + " 1\n", "Payload size");
+		assertRejected("GET /config 0 0\n", "Weight");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyMix() throws IOException {
+		read("# no requests\n");
+	}
+
+	private WorkloadMix read(String spec) throws IOException {
+		file = File.createTempFile("mix", ".txt");
+		Writer out = new FileWriter(file);
+		try {
+			out.write(spec);
+		} finally {
+			out.close();
+		}
+		return WorkloadMix.read(file.getPath());
+	}
+
+	private void assertRejected(String spec, String message) throws IOException {
+		try {
+			read(spec);
+			fail("Accepted " + spec);
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		} finally {
+			deleteFile();
+		}
+	}
+}